@@ -0,0 +1,133 @@
+package com.example.aimailbox.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Makes sure {@code emails} has the unique {@code (user_id, thread_id)} constraint the bulk upsert
+ * uses as its conflict target. {@code ddl-auto: update} cannot add it while older syncs have left
+ * duplicate rows and only logs the failure, so this runs first: the entity manager factory depends
+ * on it, so Hibernate, the schedulers and the web server only start once the constraint exists.
+ * <p>
+ * Duplicates are folded into the most recently updated row of each thread: a missing summary or
+ * embedding is taken from a duplicate, and so is a user-set status (snoozed, archived, a Kanban
+ * column) when the kept row only has the default INBOX. The folded rows are then deleted and their
+ * ids logged. Startup fails if the constraint still cannot be created, since every sync would fail
+ * without it.
+ */
+@Configuration
+@Slf4j
+public class EmailConstraintMigration implements InitializingBean {
+    private static final String CONSTRAINT = "uk_emails_user_thread";
+    private static final String NEWEST_FIRST = "COALESCE(updated_at, created_at, 'epoch') DESC, id DESC";
+
+    private static final String DUPLICATES_SQL = """
+        SELECT user_id, thread_id, string_agg(id::text, ',' ORDER BY %s) AS ids
+        FROM emails GROUP BY user_id, thread_id HAVING count(*) > 1
+        """.formatted(NEWEST_FIRST);
+
+    private static final String MERGE_SUMMARY_SQL = """
+        UPDATE emails k SET summary = d.summary
+        FROM (SELECT summary FROM emails WHERE id IN (%s) AND summary IS NOT NULL ORDER BY %s LIMIT 1) d
+        WHERE k.id = ? AND k.summary IS NULL
+        """;
+
+    private static final String MERGE_EMBEDDING_SQL = """
+        UPDATE emails k SET embedding = d.embedding, content_hash = d.content_hash
+        FROM (SELECT embedding, content_hash FROM emails WHERE id IN (%s) AND embedding IS NOT NULL ORDER BY %s LIMIT 1) d
+        WHERE k.id = ? AND k.embedding IS NULL
+        """;
+
+    private static final String MERGE_STATUS_SQL = """
+        UPDATE emails k SET status = d.status, previous_status = d.previous_status,
+            snoozed_until = d.snoozed_until, previous_label_ids = d.previous_label_ids
+        FROM (SELECT status, previous_status, snoozed_until, previous_label_ids FROM emails
+              WHERE id IN (%s) AND status <> 'INBOX' ORDER BY %s LIMIT 1) d
+        WHERE k.id = ? AND k.status = 'INBOX'
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public EmailConstraintMigration(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // The JPA transaction manager needs the entity manager factory, which waits for this bean
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Bean
+    static EntityManagerFactoryDependsOnPostProcessor emailConstraintMigrationDependency() {
+        return new EntityManagerFactoryDependsOnPostProcessor(EmailConstraintMigration.class);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // A new database gets the table, constraint included, from Hibernate
+        if (!isPostgres() || !tableExists() || hasConstraint()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                // Keeps other instances from inserting duplicates between the cleanup and the constraint
+                jdbcTemplate.execute("LOCK TABLE emails IN SHARE ROW EXCLUSIVE MODE");
+                if (hasConstraint()) {
+                    return;
+                }
+                int merged = mergeDuplicates();
+                jdbcTemplate.execute("ALTER TABLE emails ADD CONSTRAINT " + CONSTRAINT + " UNIQUE (user_id, thread_id)");
+                // Superseded by the constraint's index
+                jdbcTemplate.execute("DROP INDEX IF EXISTS idx_user_thread");
+                log.info("Added {} to emails after merging {} duplicate rows", CONSTRAINT, merged);
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not add " + CONSTRAINT + " to emails; thread sync depends on it", e);
+        }
+    }
+
+    private int mergeDuplicates() {
+        List<String[]> groups = jdbcTemplate.query(DUPLICATES_SQL, (rs, rowNum) -> new String[]{
+                rs.getString("user_id"), rs.getString("thread_id"), rs.getString("ids")});
+        int removed = 0;
+        for (String[] group : groups) {
+            List<Long> ids = Arrays.stream(group[2].split(",")).map(Long::valueOf).toList();
+            Long keep = ids.get(0);
+            // Ids come from the database as numbers, so inlining them is safe
+            String duplicates = ids.subList(1, ids.size()).stream().map(String::valueOf).collect(Collectors.joining(","));
+            jdbcTemplate.update(MERGE_SUMMARY_SQL.formatted(duplicates, NEWEST_FIRST), keep);
+            jdbcTemplate.update(MERGE_EMBEDDING_SQL.formatted(duplicates, NEWEST_FIRST), keep);
+            jdbcTemplate.update(MERGE_STATUS_SQL.formatted(duplicates, NEWEST_FIRST), keep);
+            removed += jdbcTemplate.update("DELETE FROM emails WHERE id IN (" + duplicates + ")");
+            log.warn("Merged duplicate emails rows [{}] of thread {} (user {}) into row {}",
+                    duplicates, group[1], group[0], keep);
+        }
+        return removed;
+    }
+
+    private boolean isPostgres() {
+        return "PostgreSQL".equals(jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+    }
+
+    private boolean tableExists() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass('emails') IS NOT NULL", Boolean.class));
+    }
+
+    private boolean hasConstraint() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_constraint WHERE conname = ? AND conrelid = 'emails'::regclass",
+                Integer.class, CONSTRAINT);
+        return count != null && count > 0;
+    }
+}
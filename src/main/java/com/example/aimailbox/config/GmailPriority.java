@@ -0,0 +1,10 @@
+package com.example.aimailbox.config;
+
+/**
+ * Scheduling lane for Gmail calls, read by {@link GmailQuotaFilter} from the Reactor context
+ * under the {@code GmailPriority.class} key. Calls without an entry are treated as interactive.
+ */
+public enum GmailPriority {
+    INTERACTIVE,
+    BACKGROUND
+}
@@ -0,0 +1,223 @@
+package com.example.aimailbox.config;
+
+import com.example.aimailbox.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user token bucket over Gmail quota units (250 units/s per user by default). Each request is
+ * charged what Gmail charges for the method; batch requests carry their total in the
+ * {@link #QUOTA_UNITS_ATTRIBUTE} attribute. Background calls may only spend the part of the bucket
+ * above the interactive reserve, so a large sync never delays the user's own clicks.
+ * 429 and 503 responses are retried with jittered exponential backoff.
+ */
+@Component
+@Slf4j
+public class GmailQuotaFilter implements ExchangeFilterFunction {
+    public static final String QUOTA_UNITS_ATTRIBUTE = GmailQuotaFilter.class.getName() + ".units";
+
+    private final double unitsPerSecond;
+    private final double interactiveReserve;
+    private final int maxRetries;
+    private final Duration baseBackoff;
+
+    private final Cache<Object, Bucket> buckets = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .maximumSize(100_000)
+            .build();
+
+    private final AtomicLong throttledInteractive = new AtomicLong();
+    private final AtomicLong throttledBackground = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    public GmailQuotaFilter(@Value("${gmail.quota.units-per-second:250}") double unitsPerSecond,
+                            @Value("${gmail.quota.interactive-reserve:0.3}") double interactiveReserve,
+                            @Value("${gmail.quota.max-retries:4}") int maxRetries,
+                            @Value("${gmail.quota.base-backoff-ms:500}") long baseBackoffMs) {
+        this.unitsPerSecond = unitsPerSecond;
+        this.interactiveReserve = Math.min(Math.max(interactiveReserve, 0), 1);
+        this.maxRetries = maxRetries;
+        this.baseBackoff = Duration.ofMillis(baseBackoffMs);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(ctx -> {
+            Object userKey = userKey(ctx);
+            GmailPriority priority = ctx.getOrDefault(GmailPriority.class, GmailPriority.INTERACTIVE);
+            int units = request.attribute(QUOTA_UNITS_ATTRIBUTE)
+                    .map(value -> ((Number) value).intValue())
+                    .orElseGet(() -> unitsFor(request.method(), request.url().getPath()));
+            Bucket bucket = buckets.get(userKey, key -> newBucket());
+            return exchange(request, next, bucket, units, priority, 0);
+        });
+    }
+
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next, Bucket bucket,
+                                          int units, GmailPriority priority, int attempt) {
+        return acquire(bucket, units, priority)
+                .then(next.exchange(request))
+                .flatMap(response -> {
+                    int status = response.statusCode().value();
+                    if ((status != 429 && status != 503) || attempt >= maxRetries) {
+                        return Mono.just(response);
+                    }
+                    bucket.drain();
+                    Duration delay = retryDelay(response, attempt);
+                    retried.incrementAndGet();
+                    log.warn("Gmail returned {} for {} {}, retry {} in {} ms",
+                            status, request.method(), request.url().getPath(), attempt + 1, delay.toMillis());
+                    return response.releaseBody()
+                            .then(Mono.delay(delay))
+                            .then(Mono.defer(() -> exchange(request, next, bucket, units, priority, attempt + 1)));
+                });
+    }
+
+    private Mono<Void> acquire(Bucket bucket, int units, GmailPriority priority) {
+        return Mono.defer(() -> {
+            long waitNanos = bucket.tryAcquire(units, priority == GmailPriority.BACKGROUND ? interactiveReserve : 0);
+            if (waitNanos == 0) {
+                return Mono.empty();
+            }
+            (priority == GmailPriority.BACKGROUND ? throttledBackground : throttledInteractive).incrementAndGet();
+            return Mono.delay(Duration.ofNanos(waitNanos)).then(acquire(bucket, units, priority));
+        });
+    }
+
+    private Duration retryDelay(ClientResponse response, int attempt) {
+        String retryAfter = response.headers().asHttpHeaders().getFirst("Retry-After");
+        if (retryAfter != null && retryAfter.chars().allMatch(Character::isDigit)) {
+            return Duration.ofSeconds(Long.parseLong(retryAfter));
+        }
+        long cap = baseBackoff.toMillis() << Math.min(attempt, 16);
+        return Duration.ofMillis(cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1));
+    }
+
+    private static Object userKey(ContextView ctx) {
+        Authentication auth = ctx.hasKey(Authentication.class)
+                ? ctx.get(Authentication.class)
+                : SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getPrincipal() instanceof User user && user.getId() != null) {
+            return user.getId();
+        }
+        return "anonymous";
+    }
+
+    /**
+     * Quota cost of one Gmail API call, following Google's published per-method table.
+     */
+    public static int unitsFor(HttpMethod method, String path) {
+        String p = path.replaceFirst("^.*/users/[^/]+", "");
+        if (p.endsWith("/messages/send") || p.endsWith("/drafts/send")) {
+            return 100;
+        }
+        if (p.startsWith("/history")) {
+            return 2;
+        }
+        if (p.startsWith("/profile")) {
+            return 1;
+        }
+        if (p.startsWith("/labels")) {
+            return HttpMethod.GET.equals(method) ? 1 : 5;
+        }
+        if (p.contains("/attachments/")) {
+            return 5;
+        }
+        if (p.startsWith("/threads")) {
+            if (HttpMethod.DELETE.equals(method)) {
+                return 20;
+            }
+            return 10;
+        }
+        if (p.startsWith("/messages")) {
+            if (HttpMethod.DELETE.equals(method)) {
+                return 10;
+            }
+            return 5;
+        }
+        return 5;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("unitsPerSecond", unitsPerSecond);
+        result.put("trackedUsers", buckets.estimatedSize());
+        result.put("throttledInteractive", throttledInteractive.get());
+        result.put("throttledBackground", throttledBackground.get());
+        result.put("retried", retried.get());
+        return result;
+    }
+
+    Bucket newBucket() {
+        return new Bucket();
+    }
+
+    class Bucket {
+        private double tokens = unitsPerSecond;
+        // Units charged to background calls beyond what they could take above the reserve
+        private double backgroundDebt = 0;
+        private long refilledAt = System.nanoTime();
+
+        /**
+         * Takes the units and returns 0, or returns how long to wait before trying again. A request larger
+         * than its share of the bucket (a big batch) is admitted once that share is full. A background
+         * call never takes the bucket below the interactive reserve: the rest of its cost becomes debt
+         * that later refills pay off before the next background call, so the reserve stays available.
+         */
+        synchronized long tryAcquire(int units, double reserveFraction) {
+            refill();
+            double floor = unitsPerSecond * reserveFraction;
+            double needed = Math.min(units, unitsPerSecond * (1 - reserveFraction)) + floor;
+            if (tokens >= needed && (reserveFraction == 0 || backgroundDebt == 0)) {
+                if (reserveFraction == 0) {
+                    tokens -= units;
+                } else {
+                    double taken = Math.min(units, tokens - floor);
+                    tokens -= taken;
+                    backgroundDebt += units - taken;
+                }
+                return 0;
+            }
+            // Background debt is repaid at the refill rate, then the share above the reserve has to fill up
+            double debt = reserveFraction == 0 ? 0 : backgroundDebt;
+            return (long) Math.ceil((debt + Math.max(0, needed - tokens)) / unitsPerSecond * 1_000_000_000L);
+        }
+
+        synchronized void drain() {
+            refill();
+            tokens = Math.min(tokens, 0);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(unitsPerSecond, tokens + (now - refilledAt) / 1_000_000_000.0 * unitsPerSecond);
+            refilledAt = now;
+            if (backgroundDebt > 0) {
+                // Only tokens above the reserve go to the debt
+                double floor = unitsPerSecond * interactiveReserve;
+                double paid = Math.min(backgroundDebt, Math.max(0, tokens - floor));
+                tokens -= paid;
+                backgroundDebt -= paid;
+            }
+        }
+    }
+}
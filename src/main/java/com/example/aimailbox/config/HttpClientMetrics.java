@@ -0,0 +1,44 @@
+package com.example.aimailbox.config;
+
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the live pool gauges Reactor Netty hands to a {@link ConnectionProvider.MeterRegistrar},
+ * one entry per pool and remote address, for the /stats endpoint.
+ */
+@Component
+public class HttpClientMetrics implements ConnectionProvider.MeterRegistrar {
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(poolName + " " + remoteAddress, metrics);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(poolName + " " + remoteAddress);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        pools.forEach((pool, metrics) -> {
+            Map<String, Object> gauges = new LinkedHashMap<>();
+            gauges.put("acquired", metrics.acquiredSize());
+            gauges.put("idle", metrics.idleSize());
+            gauges.put("allocated", metrics.allocatedSize());
+            gauges.put("maxAllocated", metrics.maxAllocatedSize());
+            gauges.put("pendingAcquire", metrics.pendingAcquireSize());
+            gauges.put("maxPendingAcquire", metrics.maxPendingAcquireSize());
+            result.put(pool, gauges);
+        });
+        return result;
+    }
+}
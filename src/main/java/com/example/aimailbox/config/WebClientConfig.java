@@ -3,9 +3,14 @@ package com.example.aimailbox.config;
 import com.example.aimailbox.model.User;
 import com.example.aimailbox.service.OAuthTokenService;
 import lombok.extern.slf4j.Slf4j;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.reactive.function.client.ClientRequest;
@@ -13,34 +18,69 @@ import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 @Slf4j
 public class WebClientConfig {
+    private static final String READ_TIMEOUT_HANDLER = "exchangeReadTimeout";
+    private static final String WRITE_TIMEOUT_HANDLER = "exchangeWriteTimeout";
+
+    @Value("${http-client.max-connections:100}")
+    int maxConnections;
+    @Value("${http-client.pending-acquire-max-count:1000}")
+    int pendingAcquireMaxCount;
+    @Value("${http-client.pending-acquire-timeout-ms:10000}")
+    long pendingAcquireTimeoutMs;
+    @Value("${http-client.max-idle-time-seconds:30}")
+    long maxIdleTimeSeconds;
+    @Value("${http-client.max-life-time-seconds:300}")
+    long maxLifeTimeSeconds;
+    @Value("${http-client.connect-timeout-ms:5000}")
+    int connectTimeoutMs;
+    @Value("${http-client.read-timeout-seconds:30}")
+    int readTimeoutSeconds;
+    @Value("${http-client.write-timeout-seconds:30}")
+    int writeTimeoutSeconds;
+    @Value("${http-client.response-timeout-seconds:30}")
+    long responseTimeoutSeconds;
+    @Value("${http-client.http2:true}")
+    boolean http2;
 
     @Bean
-    public WebClient gmailWebClient(WebClient.Builder builder, OAuthTokenService oAuthTokenService) {
+    public WebClient gmailWebClient(WebClient.Builder builder, OAuthTokenService oAuthTokenService,
+                                    GmailQuotaFilter gmailQuotaFilter, HttpClientMetrics httpClientMetrics) {
         return builder
+                .clientConnector(connector("gmail", httpClientMetrics))
                 .baseUrl("https://gmail.googleapis.com/gmail/v1/users/me")
                 .exchangeStrategies(ExchangeStrategies.builder()
                         .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
                         .build())
+                // Outermost, so quota retries go through auth and token refresh again
+                .filter(gmailQuotaFilter)
                 .filter(authorizationHeaderFilter(oAuthTokenService))
                 .filter(tokenRefreshFilter(oAuthTokenService))
                 .build();
     }
 
     @Bean
-    public WebClient googleOauthClient(WebClient.Builder builder) {
-        return WebClient.builder()
+    public WebClient googleOauthClient(WebClient.Builder builder, HttpClientMetrics httpClientMetrics) {
+        return builder
+                .clientConnector(connector("oauth", httpClientMetrics))
                 .baseUrl("https://oauth2.googleapis.com")
                 .build();
     }
 
     // Google Generative API client (used to call Gemini models)
     @Bean
-    public WebClient googleGenerativeClient(WebClient.Builder builder) {
-        return WebClient.builder()
+    public WebClient googleGenerativeClient(WebClient.Builder builder, HttpClientMetrics httpClientMetrics) {
+        return builder
+                .clientConnector(connector("generative", httpClientMetrics))
                 .baseUrl("https://generativelanguage.googleapis.com/v1beta2")
                 .exchangeStrategies(ExchangeStrategies.builder()
                         .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
@@ -48,6 +88,43 @@ public class WebClientConfig {
                 .build();
     }
 
+    /**
+     * One pool per upstream host: keep-alive with idle/lifetime eviction, bounded pending acquires,
+     * connect/read/write/response timeouts, gzip, and HTTP/2 negotiated over ALPN (Google serves h2).
+     * Read/write timeout handlers live only for the duration of one exchange, so an idle pooled
+     * connection is never closed by a timer left over from its previous request.
+     */
+    private ReactorClientHttpConnector connector(String name, HttpClientMetrics httpClientMetrics) {
+        ConnectionProvider provider = ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(maxIdleTimeSeconds))
+                .metrics(true, () -> httpClientMetrics)
+                .build();
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds))
+                .doOnRequest((request, connection) -> connection
+                        .addHandlerLast(READ_TIMEOUT_HANDLER, new ReadTimeoutHandler(readTimeoutSeconds))
+                        .addHandlerLast(WRITE_TIMEOUT_HANDLER, new WriteTimeoutHandler(writeTimeoutSeconds)))
+                // A failed exchange closes its connection instead of returning it to the pool
+                .doAfterResponseSuccess((response, connection) -> removeTimeoutHandlers(connection))
+                .compress(true);
+        if (http2) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    private static void removeTimeoutHandlers(Connection connection) {
+        connection.removeHandler(READ_TIMEOUT_HANDLER)
+                .removeHandler(WRITE_TIMEOUT_HANDLER);
+    }
+
     /** Add Authorization header using servlet SecurityContextHolder (works in servlet MVC controllers) */
     @Bean
     public ExchangeFilterFunction authorizationHeaderFilter(OAuthTokenService oAuthTokenService) {
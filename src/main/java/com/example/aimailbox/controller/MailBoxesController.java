@@ -37,7 +37,11 @@ public class MailBoxesController {
             @RequestParam(required = false) Integer maxResults,
             @RequestParam(required = false) String pageToken,
             @RequestParam(required = false) String query,
-            @RequestParam(required = false, defaultValue = "false") Boolean includeSpamTrash) {
+            @RequestParam(required = false, defaultValue = "false") Boolean includeSpamTrash,
+            @RequestParam(required = false) String hydrate) {
+        if ("metadata".equalsIgnoreCase(hydrate)) {
+            return proxyMailService.getListThreadsWithMetadata(maxResults, pageToken, query, id, includeSpamTrash);
+        }
         return proxyMailService.getListThreadsWithSnoozeFilter(maxResults, pageToken, query, id, includeSpamTrash);
     }
     @PostMapping
@@ -2,23 +2,51 @@ package com.example.aimailbox.controller;
 
 import com.example.aimailbox.dto.request.EmailSendRequest;
 import com.example.aimailbox.dto.request.ModifyEmailRequest;
+import com.example.aimailbox.dto.request.ThreadBodies;
 import com.example.aimailbox.dto.response.EmailResponse;
 import com.example.aimailbox.dto.response.EmailSummaryResponse;
 import com.example.aimailbox.dto.response.GmailSendResponse;
+import com.example.aimailbox.dto.response.MessageBodyResponse;
+import com.example.aimailbox.dto.response.MessageDetailResponse;
+import com.example.aimailbox.dto.response.OutboxMessageResponse;
+import com.example.aimailbox.dto.response.SyncJobResponse;
 import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import com.example.aimailbox.model.User;
+import com.example.aimailbox.service.AttachmentDiskCache;
 import com.example.aimailbox.service.FuzzySearchService;
+import com.example.aimailbox.service.OutboxService;
 import com.example.aimailbox.service.ProxyMailService;
 import com.example.aimailbox.service.SematicSearchService;
+import com.example.aimailbox.service.SyncJobService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.*;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/emails")
@@ -27,47 +55,238 @@ import java.util.List;
 public class MailController {
     ProxyMailService proxyMailService;
     FuzzySearchService fuzzySearchService;
+    AttachmentDiskCache attachmentDiskCache;
+    OutboxService outboxService;
+    SyncJobService syncJobService;
     private static final Logger log = LoggerFactory.getLogger(MailController.class);
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final Duration SENDFILE_PIN = Duration.ofMinutes(1);
     private final SematicSearchService sematicSearchService;
 
     @GetMapping("/{id}")
-    public Mono<ThreadDetailResponse> getEmailDetail(@PathVariable String id) {
-        return proxyMailService.getThreadDetail(id);
+    public Mono<ThreadDetailResponse> getEmailDetail(@PathVariable String id,
+                                                     @RequestParam(required = false) String bodies) {
+        return proxyMailService.getThreadDetail(id, ThreadBodies.from(bodies));
+    }
+
+    @GetMapping("/message/{messageId}/body")
+    public Mono<MessageBodyResponse> getMessageBody(@PathVariable String messageId,
+                                                    @RequestParam(required = false) String threadId) {
+        return proxyMailService.getMessageBody(messageId, threadId);
+    }
+
+    @GetMapping(value = "/{id}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MessageDetailResponse> streamEmailDetail(@PathVariable String id) {
+        return proxyMailService.streamThreadMessages(id);
     }
 
     @GetMapping("/{messageId}/attachments/{attachmentId}")
-    public ResponseEntity<byte[]> getEmailAttachment(
+    public ResponseEntity<StreamingResponseBody> getEmailAttachment(
             @PathVariable String messageId,
             @PathVariable String attachmentId,
             @RequestParam String filename,
-            @RequestParam String mimeType) {
+            @RequestParam String mimeType,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        // The body is written on another thread, so carry the caller's authentication along
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        Long userId = auth != null && auth.getPrincipal() instanceof User user ? user.getId() : null;
         try {
-            byte[] attachmentData = proxyMailService.getAttachmentBytes(messageId, attachmentId);
-
             HttpHeaders headers = new HttpHeaders();
             headers.setContentDisposition(
                     ContentDisposition.attachment()
                             .filename(filename)
                             .build());
             headers.setContentType(MediaType.parseMediaType(mimeType));
-            headers.set("Access-Control-Expose-Headers", "Content-Disposition");
-            headers.setContentLength(attachmentData.length);
+            headers.set("Access-Control-Expose-Headers", "Content-Disposition, Content-Range, Accept-Ranges");
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            List<HttpRange> ranges = parseRanges(rangeHeader);
+
+            Optional<AttachmentDiskCache.CachedBlob> cached = attachmentDiskCache.lookup(userId, messageId, attachmentId);
+            if (cached.isPresent()) {
+                serveFromDisk(cached.get(), ranges, headers, request, response);
+                return null;
+            }
+
+            Long size = proxyMailService.getAttachmentSize(messageId, attachmentId).block();
+            long totalSize = size != null ? size : 0L;
+            if (ranges.size() == 1 && totalSize > 0) {
+                HttpRange range = ranges.get(0);
+                long start = range.getRangeStart(totalSize);
+                if (start >= totalSize) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + totalSize);
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+                }
+                long end = range.getRangeEnd(totalSize);
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + totalSize);
+                headers.setContentLength(end - start + 1);
+                if (attachmentDiskCache.isEnabled() && userId != null) {
+                    // Download the whole attachment into the cache, so later ranges come from disk,
+                    // and send this range to the client as soon as its bytes pass by
+                    Flux<DataBuffer> whole = attachmentDiskCache.tee(userId, messageId, attachmentId,
+                            proxyMailService.streamAttachment(messageId, attachmentId));
+                    return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                            .headers(headers)
+                            .body(out -> writeRange(whole, start, end, out, auth));
+                }
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .headers(headers)
+                        .body(out -> writeAttachment(proxyMailService.streamAttachment(messageId, attachmentId, start, end), out, auth));
+            }
 
+            if (totalSize > 0) {
+                headers.setContentLength(totalSize);
+            }
+            Flux<DataBuffer> data = attachmentDiskCache.tee(userId, messageId, attachmentId,
+                    proxyMailService.streamAttachment(messageId, attachmentId));
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(attachmentData);
+                    .body(out -> writeAttachment(data, out, auth));
         } catch (Exception error) {
-            error.printStackTrace();
+            log.error("Failed to download attachment {} of message {}", attachmentId, messageId, error);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Error: " + error.getMessage()).getBytes());
+                    .body(out -> out.write(("Error: " + error.getMessage()).getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Writes a cached blob synchronously. Tomcat's sendfile hands the file straight to the socket
+     * when the connector supports it, otherwise the file channel is transferred to the response stream.
+     * The blob stays pinned against eviction until it has been handed over.
+     */
+    private static void serveFromDisk(AttachmentDiskCache.CachedBlob cached, List<HttpRange> ranges, HttpHeaders headers,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean sendfile = false;
+        try {
+            sendfile = serveFromDisk(cached.path(), ranges, headers, request, response);
+        } finally {
+            if (sendfile) {
+                // Tomcat opens the file only after the request returns
+                cached.closeAfter(SENDFILE_PIN);
+            } else {
+                cached.close();
+            }
+        }
+    }
+
+    private static boolean serveFromDisk(Path blob, List<HttpRange> ranges, HttpHeaders headers,
+                                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long totalSize = Files.size(blob);
+        long start = 0;
+        long end = totalSize - 1;
+        int status = HttpServletResponse.SC_OK;
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            start = range.getRangeStart(totalSize);
+            if (start >= totalSize) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + totalSize);
+                headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return false;
+            }
+            end = range.getRangeEnd(totalSize);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + totalSize);
+            status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        }
+        long length = end - start + 1;
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        response.setStatus(status);
+        response.setContentLengthLong(length);
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, blob.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, out);
+            }
+        }
+        return false;
+    }
+
+    private static <T> Mono<T> withAuth(Mono<T> mono, Authentication auth) {
+        return auth != null ? mono.contextWrite(ctx -> ctx.put(Authentication.class, auth)) : mono;
+    }
+
+    private static List<HttpRange> parseRanges(String rangeHeader) {
+        if (rangeHeader == null || rangeHeader.isBlank()) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // Malformed or multi-part ranges: serve the whole attachment
+            return List.of();
         }
     }
 
+    /**
+     * Writes bytes {@code start..end} of {@code whole} and flushes them as soon as they are complete,
+     * then keeps draining the rest so the download reaches the cache. The client has its full
+     * Content-Length by then, so it does not wait for the remainder.
+     */
+    private static void writeRange(Flux<DataBuffer> whole, long start, long end, OutputStream out, Authentication auth) {
+        long[] position = {0};
+        Flux<DataBuffer> source = auth != null ? whole.contextWrite(ctx -> ctx.put(Authentication.class, auth)) : whole;
+        source.doOnNext(buffer -> {
+                    try {
+                        long from = position[0];
+                        int length = buffer.readableByteCount();
+                        position[0] += length;
+                        long first = Math.max(start, from);
+                        long last = Math.min(end, from + length - 1);
+                        if (first <= last) {
+                            byte[] bytes = new byte[(int) (last - first + 1)];
+                            buffer.readPosition(buffer.readPosition() + (int) (first - from));
+                            buffer.read(bytes);
+                            out.write(bytes);
+                            if (last == end) {
+                                out.flush();
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .then()
+                .block();
+    }
+
+    private static void writeAttachment(Flux<DataBuffer> data, OutputStream out, Authentication auth) {
+        Flux<DataBuffer> source = auth != null ? data.contextWrite(ctx -> ctx.put(Authentication.class, auth)) : data;
+        DataBufferUtils.write(source, out)
+                .map(DataBufferUtils::release)
+                .then()
+                .block();
+    }
+
     @PostMapping(value = "/send", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public Mono<GmailSendResponse> sendEmail(@ModelAttribute EmailSendRequest request) {
         return proxyMailService.sendEmail(request);
     }
 
+    @PostMapping(value = "/outbox", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<OutboxMessageResponse>> sendEmailViaOutbox(@ModelAttribute EmailSendRequest request) {
+        return outboxService.enqueue(request)
+                .map(queued -> ResponseEntity.status(HttpStatus.ACCEPTED).body(queued));
+    }
+
+    @GetMapping("/outbox/{id}")
+    public Mono<OutboxMessageResponse> getOutboxStatus(@PathVariable Long id) {
+        return outboxService.getStatus(id);
+    }
+
     @PostMapping("/modify")
     public Mono<String> modifyEmail(@RequestBody ModifyEmailRequest request) {
         return proxyMailService.modifyMessageLabels(request);
@@ -137,7 +356,23 @@ public class MailController {
         return fuzzySearchService.refreshData();
     }
     @PostMapping("/sematic-sync")
-    public Mono<Void> syncSematicEmail() {
-        return sematicSearchService.syncEmails();
+    public Mono<ResponseEntity<SyncJobResponse>> syncSematicEmail() {
+        return syncJobService.start()
+                .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job));
+    }
+
+    @GetMapping("/sync-jobs/latest")
+    public Mono<SyncJobResponse> getLatestSyncJob() {
+        return syncJobService.getLatest();
+    }
+
+    @GetMapping("/sync-jobs/{id}")
+    public Mono<SyncJobResponse> getSyncJob(@PathVariable Long id) {
+        return syncJobService.getStatus(id);
+    }
+
+    @PostMapping("/sync-jobs/{id}/cancel")
+    public Mono<SyncJobResponse> cancelSyncJob(@PathVariable Long id) {
+        return syncJobService.cancel(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.example.aimailbox.controller;
+
+import com.example.aimailbox.config.GmailQuotaFilter;
+import com.example.aimailbox.config.HttpClientMetrics;
+import com.example.aimailbox.service.AttachmentDiskCache;
+import com.example.aimailbox.service.BackgroundSyncScheduler;
+import com.example.aimailbox.service.EmbeddingService;
+import com.example.aimailbox.service.EmbeddingStore;
+import com.example.aimailbox.service.QueryEmbeddingCache;
+import com.example.aimailbox.service.SingleFlight;
+import com.example.aimailbox.service.SnoozeIndex;
+import com.example.aimailbox.service.SyncPipeline;
+import com.example.aimailbox.service.ThreadDetailCache;
+import com.example.aimailbox.service.ThreadListCache;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/stats")
+@RequiredArgsConstructor
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class StatsController {
+    ThreadDetailCache threadDetailCache;
+    ThreadListCache threadListCache;
+    AttachmentDiskCache attachmentDiskCache;
+    GmailQuotaFilter gmailQuotaFilter;
+    SingleFlight singleFlight;
+    HttpClientMetrics httpClientMetrics;
+    SnoozeIndex snoozeIndex;
+    EmbeddingService embeddingService;
+    EmbeddingStore embeddingStore;
+    QueryEmbeddingCache queryEmbeddingCache;
+    BackgroundSyncScheduler backgroundSyncScheduler;
+    SyncPipeline syncPipeline;
+
+    @GetMapping("")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threadDetailCache", threadDetailCache.stats());
+        stats.put("threadListCache", threadListCache.stats());
+        stats.put("attachmentCache", attachmentDiskCache.stats());
+        stats.put("gmailQuota", gmailQuotaFilter.stats());
+        stats.put("singleFlight", singleFlight.stats());
+        stats.put("httpPools", httpClientMetrics.stats());
+        stats.put("snoozeIndex", snoozeIndex.stats());
+        stats.put("embeddings", embeddingService.stats());
+        stats.put("embeddingStore", embeddingStore.stats());
+        stats.put("queryEmbeddingCache", queryEmbeddingCache.stats());
+        stats.put("backgroundSync", backgroundSyncScheduler.stats());
+        stats.put("syncPipeline", syncPipeline.stats());
+        return stats;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.aimailbox.dto.request;
+
+/**
+ * Which message bodies a thread detail response carries: {@code all} (default), only the
+ * {@code last} message's, or {@code none}. Omitted bodies can be loaded per message.
+ */
+public enum ThreadBodies {
+    ALL,
+    LAST,
+    NONE;
+
+    public static ThreadBodies from(String value) {
+        if (value == null || value.isBlank()) {
+            return ALL;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("bodies must be one of all, last, none");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.aimailbox.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.function.Function;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class GmailBatchItem<T> {
+    // Caller supplied key of the sub-request, e.g. the thread id
+    String id;
+    int status;
+    T body;
+    String error;
+
+    public boolean isSuccess() {
+        return status >= 200 && status < 300 && body != null;
+    }
+
+    public <R> GmailBatchItem<R> map(Function<T, R> mapper) {
+        return new GmailBatchItem<>(id, status, isSuccess() ? mapper.apply(body) : null, error);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.aimailbox.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level =  AccessLevel.PRIVATE)
+public class GmailProfileResponse {
+    String emailAddress;
+    Long messagesTotal;
+    Long threadsTotal;
+    String historyId;
+}
@@ -0,0 +1,18 @@
+package com.example.aimailbox.dto.response;
+
+import com.example.aimailbox.dto.response.mail.History;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level =  AccessLevel.PRIVATE)
+public class ListHistoryResponse {
+    List<History> history;
+    String nextPageToken;
+    String historyId;
+}
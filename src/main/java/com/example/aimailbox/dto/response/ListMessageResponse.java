@@ -0,0 +1,18 @@
+package com.example.aimailbox.dto.response;
+
+import com.example.aimailbox.dto.response.mail.Message;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level =  AccessLevel.PRIVATE)
+public class ListMessageResponse {
+    List<Message> messages;
+    String nextPageToken;
+    String resultSizeEstimate;
+}
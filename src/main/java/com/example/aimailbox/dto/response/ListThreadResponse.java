@@ -1,6 +1,7 @@
 package com.example.aimailbox.dto.response;
 
 import com.example.aimailbox.dto.response.mail.Thread;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
@@ -15,4 +16,7 @@ public class ListThreadResponse {
     List<Thread> threads;
     String nextPageToken;
     String resultSizeEstimate;
+    // Only filled when the listing is hydrated, e.g. hydrate=metadata
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    List<ThreadSummaryResponse> items;
 }
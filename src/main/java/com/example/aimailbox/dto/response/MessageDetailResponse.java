@@ -1,16 +1,20 @@
 package com.example.aimailbox.dto.response;
 
 import com.example.aimailbox.dto.response.mail.Attachment;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class MessageDetailResponse {
     String id;
@@ -27,4 +31,77 @@ public class MessageDetailResponse {
     String htmlBody;
     List<String> labelIds;
     List<Attachment> attachments = new ArrayList<>();
+    // Set when the bodies were left out of a thread response, see ThreadBodies
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Boolean bodyOmitted;
+    // Bodies as Gmail sent them (base64url), decoded on first read of textBody/htmlBody
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    String encodedTextBody;
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    String encodedHtmlBody;
+
+    public synchronized String getTextBody() {
+        if (encodedTextBody != null) {
+            textBody = decode(encodedTextBody);
+            encodedTextBody = null;
+        }
+        return textBody;
+    }
+
+    public synchronized void setTextBody(String textBody) {
+        this.textBody = textBody;
+        this.encodedTextBody = null;
+    }
+
+    public synchronized String getHtmlBody() {
+        if (encodedHtmlBody != null) {
+            htmlBody = decode(encodedHtmlBody);
+            encodedHtmlBody = null;
+        }
+        return htmlBody;
+    }
+
+    public synchronized void setHtmlBody(String htmlBody) {
+        this.htmlBody = htmlBody;
+        this.encodedHtmlBody = null;
+    }
+
+    public synchronized boolean hasTextBody() {
+        return textBody != null || encodedTextBody != null;
+    }
+
+    public synchronized boolean hasHtmlBody() {
+        return htmlBody != null || encodedHtmlBody != null;
+    }
+
+    /**
+     * Copy without text/html bodies, leaving this instance (possibly cached) untouched.
+     */
+    public synchronized MessageDetailResponse withoutBodies() {
+        return toBuilder()
+                .textBody(null)
+                .htmlBody(null)
+                .encodedTextBody(null)
+                .encodedHtmlBody(null)
+                .bodyOmitted(true)
+                .build();
+    }
+
+    /**
+     * Approximate size of both bodies in chars, without decoding them.
+     */
+    public synchronized long bodyLength() {
+        return length(textBody) + length(htmlBody)
+                + length(encodedTextBody) * 3 / 4 + length(encodedHtmlBody) * 3 / 4;
+    }
+
+    private static long length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private static String decode(String data) {
+        return new String(Base64.getUrlDecoder().decode(data), StandardCharsets.UTF_8);
+    }
 }
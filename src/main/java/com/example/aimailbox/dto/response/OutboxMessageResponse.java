@@ -0,0 +1,24 @@
+package com.example.aimailbox.dto.response;
+
+import com.example.aimailbox.model.OutboxStatus;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OutboxMessageResponse {
+    Long id;
+    OutboxStatus status;
+    int attempts;
+    Instant nextAttemptAt;
+    String lastError;
+    String gmailMessageId;
+    String threadId;
+    Instant createdAt;
+    Instant sentAt;
+}
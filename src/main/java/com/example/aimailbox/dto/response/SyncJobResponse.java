@@ -0,0 +1,31 @@
+package com.example.aimailbox.dto.response;
+
+import com.example.aimailbox.model.SyncJobMode;
+import com.example.aimailbox.model.SyncJobStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SyncJobResponse {
+    Long id;
+    SyncJobStatus status;
+    SyncJobMode mode;
+    int pagesSynced;
+    int threadsSynced;
+    // Backfill jobs only: date windows not yet fully imported
+    Integer windowsRemaining;
+    boolean cancelRequested;
+    String lastError;
+    Instant createdAt;
+    Instant startedAt;
+    Instant lastProgressAt;
+    Instant finishedAt;
+}
@@ -8,11 +8,12 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class ThreadDetailResponse {
     String id;
     String snippet;
+    String historyId;
     List<String> labelIds;
     List<MessageDetailResponse> messages;
 }
@@ -0,0 +1,24 @@
+package com.example.aimailbox.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ThreadSummaryResponse {
+    String id;
+    String historyId;
+    String snippet;
+    String from;
+    String to;
+    String subject;
+    String date;
+    Integer messageCount;
+    Boolean unread;
+    List<String> labelIds;
+}
@@ -0,0 +1,19 @@
+package com.example.aimailbox.dto.response.mail;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level =  AccessLevel.PRIVATE)
+public class History {
+    String id;
+    List<HistoryMessage> messagesAdded;
+    List<HistoryMessage> messagesDeleted;
+    List<HistoryMessage> labelsAdded;
+    List<HistoryMessage> labelsRemoved;
+}
@@ -0,0 +1,17 @@
+package com.example.aimailbox.dto.response.mail;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level =  AccessLevel.PRIVATE)
+public class HistoryMessage {
+    Message message;
+    // Only set for labelsAdded / labelsRemoved records
+    List<String> labelIds;
+}
@@ -13,5 +13,7 @@ public class Message {
     private String threadId;
     private java.util.List<String> labelIds;
     private String snippet;
+    private String historyId;
+    private String internalDate;  // epoch millis, as a string
     private MessagePart payload;
 }
@@ -14,6 +14,7 @@ import java.util.List;
 public class Thread {
     String id;
     String snippet;
+    String historyId;
     List<String> labelIds;
 }
 
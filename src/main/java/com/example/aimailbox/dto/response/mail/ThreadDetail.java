@@ -13,6 +13,7 @@ import java.util.List;
 public class ThreadDetail {
     String id;
     String snippet;
+    String historyId;
     List<String> labelIds;
     List<Message> messages;
 }
@@ -0,0 +1,130 @@
+package com.example.aimailbox.helper;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Incrementally extracts and base64url-decodes the {@code data} field of a Gmail attachment
+ * response ({"size": 123, "data": "...", "attachmentId": "..."}) as the JSON arrives in chunks,
+ * so the encoded payload never has to be held in memory as a whole.
+ * Not thread-safe; use one instance per response.
+ */
+public class AttachmentDataDecoder {
+    private static final int[] DECODE_TABLE = new int[128];
+    private static final int MAX_KEY_LENGTH = 16;
+
+    static {
+        java.util.Arrays.fill(DECODE_TABLE, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = i;
+        }
+        // Accept both the url-safe and the standard alphabet
+        DECODE_TABLE['-'] = 62;
+        DECODE_TABLE['_'] = 63;
+        DECODE_TABLE['+'] = 62;
+        DECODE_TABLE['/'] = 63;
+    }
+
+    private enum State { OUTSIDE, IN_STRING, IN_DATA, DONE }
+
+    private State state = State.OUTSIDE;
+    private boolean escaped;
+    private final StringBuilder currentString = new StringBuilder();
+    private String lastString;
+    private boolean dataValueNext;
+
+    private int quantum;
+    private int quantumLength;
+
+    /**
+     * Feeds the next chunk of the JSON response and returns the bytes decoded from it (possibly empty).
+     */
+    public byte[] decode(byte[] chunk, int offset, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(state == State.IN_DATA ? length * 3 / 4 + 3 : 0);
+        for (int i = offset; i < offset + length && state != State.DONE; i++) {
+            char c = (char) (chunk[i] & 0xff);
+            switch (state) {
+                case OUTSIDE -> {
+                    if (c == '"') {
+                        if (dataValueNext) {
+                            state = State.IN_DATA;
+                        } else {
+                            state = State.IN_STRING;
+                            currentString.setLength(0);
+                        }
+                    } else if (c == ':') {
+                        dataValueNext = "data".equals(lastString);
+                        lastString = null;
+                    } else if (!Character.isWhitespace(c)) {
+                        dataValueNext = false;
+                        lastString = null;
+                    }
+                }
+                case IN_STRING -> {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        lastString = currentString.length() <= MAX_KEY_LENGTH ? currentString.toString() : null;
+                        state = State.OUTSIDE;
+                    } else if (currentString.length() <= MAX_KEY_LENGTH) {
+                        currentString.append(c);
+                    }
+                }
+                case IN_DATA -> {
+                    if (escaped) {
+                        // Only an escaped slash is data; other escapes (e.g. a wrapped line) are not base64
+                        if (c == '/') {
+                            decodeChar(c, out);
+                        }
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        flushFinalQuantum(out);
+                        state = State.DONE;
+                    } else {
+                        decodeChar(c, out);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * True once the whole data field has been decoded.
+     */
+    public boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    private void decodeChar(char c, ByteArrayOutputStream out) {
+        if (c == '=' || c >= 128 || DECODE_TABLE[c] < 0) {
+            // padding and whitespace carry no data
+            return;
+        }
+        quantum = (quantum << 6) | DECODE_TABLE[c];
+        if (++quantumLength == 4) {
+            out.write(quantum >> 16);
+            out.write(quantum >> 8);
+            out.write(quantum);
+            quantum = 0;
+            quantumLength = 0;
+        }
+    }
+
+    private void flushFinalQuantum(ByteArrayOutputStream out) {
+        if (quantumLength == 2) {
+            out.write(quantum >> 4);
+        } else if (quantumLength == 3) {
+            out.write(quantum >> 10);
+            out.write(quantum >> 2);
+        }
+        quantum = 0;
+        quantumLength = 0;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.aimailbox.helper;
+
+import com.example.aimailbox.dto.response.MessageDetailResponse;
+import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import com.example.aimailbox.dto.response.mail.Attachment;
+import com.example.aimailbox.dto.response.mail.Message;
+import com.example.aimailbox.dto.response.mail.MessagePart;
+import com.example.aimailbox.dto.response.mail.MessagePartHeader;
+import com.example.aimailbox.dto.response.mail.ThreadDetail;
+
+import java.text.ParsePosition;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns Gmail thread/message resources into response DTOs in one pass. Headers are read once,
+ * the message date comes from Gmail's internalDate, and text/html bodies are handed over still
+ * base64url-encoded so they are only decoded if someone reads them.
+ */
+public final class GmailMessageParser {
+
+    private GmailMessageParser() {
+    }
+
+    public static ThreadDetailResponse parseThread(ThreadDetail threadDetail) {
+        List<Message> messages = threadDetail.getMessages();
+        ThreadDetailResponse threadDetailResponse = ThreadDetailResponse.builder()
+                .id(threadDetail.getId())
+                .snippet(threadDetail.getSnippet())
+                .historyId(threadDetail.getHistoryId())
+                .labelIds(threadDetail.getLabelIds())
+                .messages(new ArrayList<>(messages != null ? messages.size() : 0))
+                .build();
+        if (messages != null) {
+            Set<String> allLabelIds = new LinkedHashSet<>();
+            if (threadDetail.getLabelIds() != null) {
+                allLabelIds.addAll(threadDetail.getLabelIds());
+            }
+            for (Message message : messages) {
+                threadDetailResponse.getMessages().add(parseMessage(message));
+                if (message.getLabelIds() != null) {
+                    allLabelIds.addAll(message.getLabelIds());
+                }
+            }
+            threadDetailResponse.setLabelIds(new ArrayList<>(allLabelIds));
+        }
+        return threadDetailResponse;
+    }
+
+    public static MessageDetailResponse parseMessage(Message message) {
+        MessageDetailResponse response = MessageDetailResponse.builder()
+                .id(message.getId())
+                .threadId(message.getThreadId())
+                .snippet(message.getSnippet())
+                .labelIds(message.getLabelIds())
+                .attachments(new ArrayList<>())
+                .build();
+        MessagePart payload = message.getPayload();
+        String dateHeader = null;
+        if (payload != null && payload.getHeaders() != null) {
+            for (MessagePartHeader header : payload.getHeaders()) {
+                String name = header.getName();
+                if (name == null) {
+                    continue;
+                }
+                switch (name.length()) {
+                    case 2 -> {
+                        if (response.getTo() == null && name.equalsIgnoreCase("To")) response.setTo(header.getValue());
+                        else if (response.getCc() == null && name.equalsIgnoreCase("Cc")) response.setCc(header.getValue());
+                    }
+                    case 3 -> {
+                        if (response.getBcc() == null && name.equalsIgnoreCase("Bcc")) response.setBcc(header.getValue());
+                    }
+                    case 4 -> {
+                        if (response.getFrom() == null && name.equalsIgnoreCase("From")) response.setFrom(header.getValue());
+                        else if (dateHeader == null && name.equalsIgnoreCase("Date")) dateHeader = header.getValue();
+                    }
+                    case 7 -> {
+                        if (response.getSubject() == null && name.equalsIgnoreCase("Subject")) response.setSubject(header.getValue());
+                    }
+                    case 10 -> {
+                        if (response.getMessageId() == null && name.equalsIgnoreCase("Message-ID")) response.setMessageId(header.getValue());
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+        response.setDate(messageDate(message.getInternalDate(), dateHeader));
+        if (payload != null) {
+            traverseParts(payload, response);
+        }
+        return response;
+    }
+
+    /**
+     * internalDate (epoch millis, when Gmail received the message) is always present and cheap to
+     * parse; the Date header is only a fallback and is parsed without exceptions.
+     */
+    public static String messageDate(String internalDate, String dateHeader) {
+        if (internalDate != null && !internalDate.isEmpty()) {
+            try {
+                return Instant.ofEpochMilli(Long.parseLong(internalDate)).atOffset(ZoneOffset.UTC).toString();
+            } catch (NumberFormatException ignored) {
+                // fall through to the header
+            }
+        }
+        if (dateHeader == null || dateHeader.isEmpty()) {
+            return null;
+        }
+        ParsePosition position = new ParsePosition(0);
+        TemporalAccessor parsed = DateTimeFormatter.RFC_1123_DATE_TIME.parseUnresolved(dateHeader, position);
+        if (parsed == null || position.getErrorIndex() >= 0 || position.getIndex() != dateHeader.length()) {
+            return dateHeader;
+        }
+        try {
+            return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(dateHeader)).atOffset(ZoneOffset.UTC).toString();
+        } catch (RuntimeException e) {
+            // Syntactically fine but not a real date, e.g. a wrong day-of-week
+            return dateHeader;
+        }
+    }
+
+    private static void traverseParts(MessagePart part, MessageDetailResponse response) {
+        String mimeType = part.getMimeType();
+        if (part.getBody() != null && part.getBody().getData() != null && mimeType != null) {
+            if (mimeType.equalsIgnoreCase("text/plain")) {
+                if (!response.hasTextBody()) {
+                    response.setEncodedTextBody(part.getBody().getData());
+                }
+            } else if (mimeType.equalsIgnoreCase("text/html")) {
+                if (!response.hasHtmlBody()) {
+                    response.setEncodedHtmlBody(part.getBody().getData());
+                }
+            }
+        }
+        if (part.getFilename() != null && !part.getFilename().isBlank()) {
+            response.getAttachments().add(new Attachment(
+                    part.getFilename(),
+                    mimeType,
+                    part.getBody() != null ? part.getBody().getAttachmentId() : null));
+        }
+        if (part.getParts() != null) {
+            for (MessagePart child : part.getParts()) {
+                if (child != null) {
+                    traverseParts(child, response);
+                }
+            }
+        }
+    }
+}
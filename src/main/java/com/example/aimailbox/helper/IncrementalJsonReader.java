@@ -0,0 +1,135 @@
+package com.example.aimailbox.helper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a JSON body as its chunks arrive, with Jackson's non-blocking parser. Unlike the WebClient
+ * codecs it never joins the raw body into one buffer, so it is not bound by {@code maxInMemorySize},
+ * and only the element being parsed is held in memory.
+ */
+public final class IncrementalJsonReader {
+
+    private IncrementalJsonReader() {
+    }
+
+    /**
+     * Emits the elements of the array under the top-level field {@code field}, each as soon as its
+     * closing brace has arrived. Everything else in the document is skipped.
+     */
+    public static <T> Flux<T> readArrayElements(Flux<DataBuffer> body, ObjectMapper objectMapper, String field,
+                                                Class<T> type) {
+        return Flux.using(
+                () -> new ArrayReader<>(objectMapper, field, type),
+                reader -> body
+                        .concatMapIterable(buffer -> {
+                            try {
+                                byte[] chunk = new byte[buffer.readableByteCount()];
+                                buffer.read(chunk);
+                                return reader.feed(chunk);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .concatWith(Flux.defer(() -> Flux.fromIterable(reader.end()))),
+                ArrayReader::close);
+    }
+
+    private static final class ArrayReader<T> {
+        private final ObjectMapper objectMapper;
+        private final String field;
+        private final Class<T> type;
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+
+        // Containers open outside the element being captured
+        private int depth;
+        private boolean atField;
+        private boolean inArray;
+        private TokenBuffer element;
+        private int elementDepth;
+
+        ArrayReader(ObjectMapper objectMapper, String field, Class<T> type) throws IOException {
+            this.objectMapper = objectMapper;
+            this.field = field;
+            this.type = type;
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        List<T> feed(byte[] chunk) {
+            try {
+                feeder.feedInput(chunk, 0, chunk.length);
+                return drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<T> end() {
+            feeder.endOfInput();
+            try {
+                return drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<T> drain() throws IOException {
+            List<T> completed = new ArrayList<>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (element != null) {
+                    element.copyCurrentEvent(parser);
+                    if (token.isStructStart()) {
+                        elementDepth++;
+                    } else if (token.isStructEnd() && --elementDepth == 0) {
+                        try (JsonParser buffered = element.asParser(objectMapper)) {
+                            completed.add(objectMapper.readValue(buffered, type));
+                        }
+                        element = null;
+                    }
+                    continue;
+                }
+                if (inArray && depth == 2 && token == JsonToken.START_OBJECT) {
+                    element = new TokenBuffer(parser, objectMapper.getDeserializationContext());
+                    element.copyCurrentEvent(parser);
+                    elementDepth = 1;
+                    continue;
+                }
+                if (token == JsonToken.FIELD_NAME) {
+                    atField = depth == 1 && field.equals(parser.currentName());
+                    continue;
+                }
+                if (token.isStructStart()) {
+                    inArray = inArray || (atField && token == JsonToken.START_ARRAY);
+                    depth++;
+                } else if (token.isStructEnd()) {
+                    depth--;
+                    inArray = inArray && depth >= 2;
+                }
+                atField = false;
+            }
+            return completed;
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+    }
+}
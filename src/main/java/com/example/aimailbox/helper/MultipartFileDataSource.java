@@ -0,0 +1,40 @@
+package com.example.aimailbox.helper;
+
+import jakarta.activation.DataSource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Exposes an uploaded file to JavaMail without copying it into memory; every read reopens the
+ * upload's own stream, so the MIME writer can encode it more than once.
+ */
+public class MultipartFileDataSource implements DataSource {
+    private final MultipartFile file;
+
+    public MultipartFileDataSource(MultipartFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return file.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("Uploaded files are read-only");
+    }
+
+    @Override
+    public String getContentType() {
+        return file.getContentType() != null ? file.getContentType() : "application/octet-stream";
+    }
+
+    @Override
+    public String getName() {
+        return file.getOriginalFilename();
+    }
+}
@@ -21,6 +21,20 @@ public class UserHelper {
                 .flatMap(this::resolveUserFromAuthentication);
     }
 
+    /**
+     * Like {@link #getCurrentUser()} but prefers the Authentication put in the Reactor context
+     * by background jobs, which have no SecurityContext on their thread.
+     */
+    public Mono<User> getContextUser() {
+        return Mono.deferContextual(ctx -> {
+            if (ctx.hasKey(Authentication.class)
+                    && ctx.get(Authentication.class).getPrincipal() instanceof User user) {
+                return Mono.just(user);
+            }
+            return getCurrentUser();
+        });
+    }
+
     private Mono<User> resolveUserFromAuthentication(Authentication auth) {
         if (auth == null || !auth.isAuthenticated()
                 || "anonymousUser".equals(auth.getPrincipal())) {
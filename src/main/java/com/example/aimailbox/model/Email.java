@@ -12,10 +12,14 @@ import java.time.Instant;
 import java.util.List;
 
 @Entity
-@Table(name = "emails", indexes = {
-    @Index(name = "idx_user_thread", columnList = "user_id,thread_id"),
+@Table(name = "emails", uniqueConstraints = {
+    // Conflict target of the bulk upsert in EmailBulkRepository
+    @UniqueConstraint(name = "uk_emails_user_thread", columnNames = {"user_id", "thread_id"})
+}, indexes = {
     @Index(name = "idx_status", columnList = "status"),
-    @Index(name = "idx_snoozed_until", columnList = "snoozed_until")
+    @Index(name = "idx_snoozed_until", columnList = "snoozed_until"),
+    // Reloads of SnoozeIndex
+    @Index(name = "idx_user_snoozed_until", columnList = "user_id,snoozed_until")
 })
 @Getter
 @Setter
@@ -86,6 +90,10 @@ public class Email {
     @JdbcTypeCode(SqlTypes.VECTOR)
     private float[] embedding;
 
+    // SHA-256 of the embedded text (see EmbeddingStore), set together with embedding
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
 
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
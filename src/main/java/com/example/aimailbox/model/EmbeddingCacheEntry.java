@@ -0,0 +1,36 @@
+package com.example.aimailbox.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+
+/**
+ * Embedding shared by every email with the same embedded text, keyed by a hash of model and text.
+ */
+@Entity
+@Table(name = "embedding_cache")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EmbeddingCacheEntry {
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private String model;
+
+    @Column(columnDefinition = "vector(768)", nullable = false)
+    @JdbcTypeCode(SqlTypes.VECTOR)
+    private float[] embedding;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+}
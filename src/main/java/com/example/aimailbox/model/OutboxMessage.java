@@ -0,0 +1,76 @@
+package com.example.aimailbox.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "outbox_messages", indexes = {
+    @Index(name = "idx_outbox_due", columnList = "status,next_attempt_at"),
+    @Index(name = "idx_outbox_claim", columnList = "claim_token")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // Composed RFC 822 message, cleared once Gmail has accepted it
+    @Column(columnDefinition = "bytea")
+    private byte[] raw;
+
+    @Column(name = "thread_id")
+    private String threadId;
+
+    // Message-ID header of the composed message, used to find out whether an unclear attempt was sent
+    @Column(name = "rfc822_message_id", length = 998)
+    private String rfc822MessageId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private int attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "claim_token")
+    private String claimToken;
+
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "gmail_message_id")
+    private String gmailMessageId;
+
+    @Column(name = "gmail_thread_id")
+    private String gmailThreadId;
+
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
@@ -0,0 +1,8 @@
+package com.example.aimailbox.model;
+
+public enum OutboxStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    FAILED
+}
@@ -0,0 +1,92 @@
+package com.example.aimailbox.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * A Gmail to database sync for one user. Listing jobs checkpoint the next page token after every
+ * page, so a job interrupted by a restart continues from the last completed page.
+ */
+@Entity
+@Table(name = "sync_jobs", indexes = {
+    @Index(name = "idx_sync_jobs_user", columnList = "user_id,created_at"),
+    @Index(name = "idx_sync_jobs_status", columnList = "status,heartbeat_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private SyncJobStatus status = SyncJobStatus.QUEUED;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SyncJobMode mode;
+
+    // Gmail search query for listing jobs, e.g. after:<epoch>
+    @Column(length = 500)
+    private String query;
+
+    // Next page to fetch; null before the first page and after the last one
+    @Column(name = "page_token")
+    private String pageToken;
+
+    // Starting point for INCREMENTAL jobs, otherwise the checkpoint stored once the job completes
+    @Column(name = "history_id")
+    private String historyId;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private boolean planned = false;
+
+    @Column(name = "pages_synced", nullable = false)
+    @Builder.Default
+    private int pagesSynced = 0;
+
+    @Column(name = "threads_synced", nullable = false)
+    @Builder.Default
+    private int threadsSynced = 0;
+
+    @Column(name = "cancel_requested", nullable = false)
+    @Builder.Default
+    private boolean cancelRequested = false;
+
+    // Instance running the job and its last sign of life; a stale heartbeat lets another run resume it
+    @Column(name = "owner")
+    private String owner;
+
+    @Column(name = "heartbeat_at")
+    private Instant heartbeatAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "started_at")
+    private Instant startedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
@@ -0,0 +1,12 @@
+package com.example.aimailbox.model;
+
+public enum SyncJobMode {
+    // Replays Gmail history from the user's checkpoint
+    INCREMENTAL,
+    // Lists threads page by page from the job's query and page token
+    FULL,
+    // Only the newest page; superseded by BACKFILL for new users, kept for existing jobs
+    INITIAL,
+    // Whole history for users with nothing stored yet, split into date windows run in parallel
+    BACKFILL
+}
@@ -0,0 +1,9 @@
+package com.example.aimailbox.model;
+
+public enum SyncJobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED
+}
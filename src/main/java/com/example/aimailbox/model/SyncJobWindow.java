@@ -0,0 +1,60 @@
+package com.example.aimailbox.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * One date range of a backfill job, listed with {@code after:}/{@code before:} and checkpointed
+ * on its own so windows can run in parallel and resume independently.
+ */
+@Entity
+@Table(name = "sync_job_windows", indexes = {
+    @Index(name = "idx_sync_job_windows_job", columnList = "job_id,done")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncJobWindow {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    // Epoch seconds, inclusive
+    @Column(name = "after_epoch", nullable = false)
+    private long afterEpoch;
+
+    // Epoch seconds, exclusive
+    @Column(name = "before_epoch", nullable = false)
+    private long beforeEpoch;
+
+    @Column(name = "page_token")
+    private String pageToken;
+
+    @Column(name = "pages_synced", nullable = false)
+    @Builder.Default
+    private int pagesSynced = 0;
+
+    @Column(name = "threads_synced", nullable = false)
+    @Builder.Default
+    private int threadsSynced = 0;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private boolean done = false;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    public String query() {
+        return "after:" + afterEpoch + " before:" + beforeEpoch;
+    }
+}
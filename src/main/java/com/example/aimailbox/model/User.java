@@ -29,5 +29,8 @@ public class User {
     private String googleRefreshToken;
     
     private Instant googleTokenExpiryTime;
+
+    // Gmail history checkpoint used for incremental sync
+    private String gmailHistoryId;
 }
 
@@ -0,0 +1,97 @@
+package com.example.aimailbox.repository;
+
+import com.example.aimailbox.model.Email;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Set-based writes for synced threads. A page of threads goes to Postgres as one JDBC batch of
+ * {@code INSERT ... ON CONFLICT (user_id, thread_id) DO UPDATE}, instead of a select and a save per thread.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EmailBulkRepository {
+    private static final String UPSERT_SQL = """
+        INSERT INTO emails (user_id, thread_id, from_address, to_address, subject, snippet, body, status,
+                            label_ids, is_read, is_starred, has_attachments, received_at, embedding,
+                            content_hash, created_at, updated_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CAST(? AS vector), ?, now(), now())
+        ON CONFLICT (user_id, thread_id) DO UPDATE SET
+            from_address = EXCLUDED.from_address,
+            to_address = EXCLUDED.to_address,
+            subject = EXCLUDED.subject,
+            snippet = EXCLUDED.snippet,
+            body = EXCLUDED.body,
+            label_ids = EXCLUDED.label_ids,
+            is_read = EXCLUDED.is_read,
+            is_starred = EXCLUDED.is_starred,
+            has_attachments = EXCLUDED.has_attachments,
+            received_at = EXCLUDED.received_at,
+            embedding = COALESCE(EXCLUDED.embedding, emails.embedding),
+            content_hash = CASE WHEN EXCLUDED.embedding IS NULL THEN emails.content_hash ELSE EXCLUDED.content_hash END,
+            updated_at = EXCLUDED.updated_at
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts new threads and refreshes the Gmail-derived columns of existing ones. Status, snooze
+     * and summary columns are local state and are left untouched on conflict; a missing embedding
+     * keeps the stored one along with its content hash.
+     */
+    @Transactional
+    public int upsertThreads(List<Email> emails) {
+        if (emails.isEmpty()) {
+            return 0;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(UPSERT_SQL, emails, emails.size(), EmailBulkRepository::bind);
+        int total = 0;
+        for (int[] batch : counts) {
+            total += batch.length;
+        }
+        return total;
+    }
+
+    private static void bind(PreparedStatement ps, Email email) throws SQLException {
+        ps.setLong(1, email.getUser().getId());
+        ps.setString(2, email.getThreadId());
+        ps.setString(3, email.getFrom());
+        ps.setString(4, email.getTo());
+        ps.setString(5, email.getSubject());
+        ps.setString(6, email.getSnippet());
+        ps.setString(7, email.getBody());
+        ps.setString(8, email.getStatus().name());
+        ps.setString(9, email.getLabelIds());
+        ps.setObject(10, email.getIsRead(), Types.BOOLEAN);
+        ps.setObject(11, email.getIsStarred(), Types.BOOLEAN);
+        ps.setObject(12, email.getHasAttachments(), Types.BOOLEAN);
+        ps.setTimestamp(13, email.getReceivedAt() != null ? Timestamp.from(email.getReceivedAt()) : null);
+        String vector = vectorLiteral(email.getEmbedding());
+        ps.setString(14, vector);
+        // A hash without its vector would mark the content as embedded and stop later syncs retrying
+        ps.setString(15, vector != null ? email.getContentHash() : null);
+    }
+
+    // pgvector text form, e.g. [0.1,0.2]
+    private static String vectorLiteral(float[] vector) {
+        if (vector == null || vector.length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -57,6 +57,8 @@ public interface EmailRepository extends JpaRepository<Email, Long> {
 
     Optional<Email> findFirstByUserOrderByReceivedAtDesc(User user);
 
+    long deleteByUserAndThreadId(User user, String threadId);
+
     @Query(value = """
         SELECT * FROM emails e
         WHERE e.user_id = :userId
@@ -67,6 +69,12 @@ public interface EmailRepository extends JpaRepository<Email, Long> {
     List<Email> searchBySemantic(@Param("userId") Long userId,
                                  @Param("queryVector") float[] queryVector,
                                  @Param("threshold") double threshold);
-    @Query("SELECT e.threadId FROM Email e WHERE e.threadId IN :threadIds AND e.snoozedUntil > :now")
-    List<String> findSnoozedThreadIds(@Param("threadIds") List<String> threadIds, @Param("now") Instant now);
+    // Rows of (threadId, contentHash) for threads whose stored embedding matches a known hash
+    @Query("SELECT e.threadId, e.contentHash FROM Email e WHERE e.user.id = :userId AND e.threadId IN :threadIds "
+            + "AND e.contentHash IS NOT NULL AND e.embedding IS NOT NULL")
+    List<Object[]> findEmbeddedContentHashes(@Param("userId") Long userId, @Param("threadIds") List<String> threadIds);
+
+    // Rows of (threadId, snoozedUntil)
+    @Query("SELECT e.threadId, e.snoozedUntil FROM Email e WHERE e.user.id = :userId AND e.snoozedUntil > :now")
+    List<Object[]> findSnoozedThreadsByUserId(@Param("userId") Long userId, @Param("now") Instant now);
 }
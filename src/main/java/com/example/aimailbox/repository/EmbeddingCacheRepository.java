@@ -0,0 +1,23 @@
+package com.example.aimailbox.repository;
+
+import com.example.aimailbox.model.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, String> {
+
+    // Concurrent syncs may embed the same content; the first writer wins
+    @Modifying
+    @Transactional
+    @Query(value = """
+        INSERT INTO embedding_cache (content_hash, model, embedding, created_at)
+        VALUES (:hash, :model, CAST(:embedding AS vector), now())
+        ON CONFLICT (content_hash) DO NOTHING
+        """, nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash, @Param("model") String model, @Param("embedding") float[] embedding);
+}
@@ -0,0 +1,73 @@
+package com.example.aimailbox.repository;
+
+import com.example.aimailbox.model.OutboxMessage;
+import com.example.aimailbox.model.OutboxStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    Optional<OutboxMessage> findByIdAndUserId(Long id, Long userId);
+
+    List<OutboxMessage> findByClaimToken(String claimToken);
+
+    /**
+     * Marks up to {@code limit} due messages as SENDING under the given token. SKIP LOCKED lets several
+     * instances claim concurrently without handing out the same row twice.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+        UPDATE outbox_messages SET status = 'SENDING', claim_token = :token, claimed_at = :now
+        WHERE id IN (
+            SELECT id FROM outbox_messages
+            WHERE status = 'PENDING' AND next_attempt_at <= :now
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED)
+        """, nativeQuery = true)
+    int claimDue(@Param("token") String token, @Param("now") Instant now, @Param("limit") int limit);
+
+    /**
+     * Messages left in SENDING by a crashed dispatcher. Each still carries its claim token, so it is
+     * released through markRetry or markFailed like any other failed attempt.
+     */
+    List<OutboxMessage> findByStatusAndClaimedAtBefore(OutboxStatus status, Instant before);
+
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE OutboxMessage o SET o.status = 'SENT', o.raw = null, o.claimToken = null, o.lastError = null,
+            o.gmailMessageId = :gmailMessageId, o.gmailThreadId = :gmailThreadId, o.sentAt = :now, o.attempts = o.attempts + 1
+        WHERE o.id = :id AND o.claimToken = :token AND o.status = 'SENDING'
+        """)
+    int markSent(@Param("id") Long id, @Param("token") String token, @Param("gmailMessageId") String gmailMessageId,
+                 @Param("gmailThreadId") String gmailThreadId, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE OutboxMessage o SET o.status = 'PENDING', o.claimToken = null, o.lastError = :error,
+            o.nextAttemptAt = :nextAttemptAt, o.attempts = o.attempts + 1
+        WHERE o.id = :id AND o.claimToken = :token AND o.status = 'SENDING'
+        """)
+    int markRetry(@Param("id") Long id, @Param("token") String token, @Param("error") String error,
+                  @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE OutboxMessage o SET o.status = 'FAILED', o.claimToken = null, o.lastError = :error, o.attempts = o.attempts + 1
+        WHERE o.id = :id AND o.claimToken = :token AND o.status = 'SENDING'
+        """)
+    int markFailed(@Param("id") Long id, @Param("token") String token, @Param("error") String error);
+}
@@ -0,0 +1,112 @@
+package com.example.aimailbox.repository;
+
+import com.example.aimailbox.model.SyncJob;
+import com.example.aimailbox.model.SyncJobMode;
+import com.example.aimailbox.model.SyncJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SyncJobRepository extends JpaRepository<SyncJob, Long> {
+
+    Optional<SyncJob> findByIdAndUserId(Long id, Long userId);
+
+    Optional<SyncJob> findFirstByUserIdOrderByCreatedAtDesc(Long userId);
+
+    Optional<SyncJob> findFirstByUserIdAndModeOrderByCreatedAtDesc(Long userId, SyncJobMode mode);
+
+    Optional<SyncJob> findFirstByUserIdAndStatusInOrderByCreatedAtDesc(Long userId, Collection<SyncJobStatus> statuses);
+
+    boolean existsByUserIdAndStatusIn(Long userId, Collection<SyncJobStatus> statuses);
+
+    // Unfinished jobs nobody is running: never started, or their owner stopped sending heartbeats
+    @Query("SELECT j FROM SyncJob j WHERE j.status IN :statuses AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)")
+    List<SyncJob> findResumable(@Param("statuses") Collection<SyncJobStatus> statuses, @Param("staleBefore") Instant staleBefore);
+
+    @Query("SELECT j.cancelRequested FROM SyncJob j WHERE j.id = :id")
+    boolean isCancelRequested(@Param("id") Long id);
+
+    /**
+     * Takes over a job for {@code owner}. Only one caller can win while the heartbeat is fresh,
+     * which keeps two instances from running the same job after a deploy.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE SyncJob j SET j.status = 'RUNNING', j.owner = :owner, j.heartbeatAt = :now,
+            j.startedAt = COALESCE(j.startedAt, :now)
+        WHERE j.id = :id AND j.status IN ('QUEUED', 'RUNNING') AND j.cancelRequested = false
+            AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)
+        """)
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("now") Instant now,
+              @Param("staleBefore") Instant staleBefore);
+
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE SyncJob j SET j.mode = :mode, j.query = :query, j.historyId = :historyId, j.planned = true,
+            j.heartbeatAt = :now
+        WHERE j.id = :id AND j.owner = :owner
+        """)
+    int savePlan(@Param("id") Long id, @Param("owner") String owner, @Param("mode") SyncJobMode mode,
+                 @Param("query") String query, @Param("historyId") String historyId, @Param("now") Instant now);
+
+    // Checkpoint after a completed page; also the owner's heartbeat
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE SyncJob j SET j.pageToken = :pageToken, j.pagesSynced = j.pagesSynced + 1,
+            j.threadsSynced = j.threadsSynced + :threads, j.heartbeatAt = :now
+        WHERE j.id = :id AND j.owner = :owner
+        """)
+    int recordPage(@Param("id") Long id, @Param("owner") String owner, @Param("pageToken") String pageToken,
+                   @Param("threads") int threads, @Param("now") Instant now);
+
+    // Only the owner ends a running job; an instance that lost it to a takeover updates nothing
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE SyncJob j SET j.status = :status, j.lastError = :error, j.finishedAt = :now, j.heartbeatAt = :now
+        WHERE j.id = :id AND j.owner = :owner AND j.status IN ('QUEUED', 'RUNNING')
+        """)
+    int finish(@Param("id") Long id, @Param("owner") String owner, @Param("status") SyncJobStatus status,
+               @Param("error") String error, @Param("now") Instant now);
+
+    // Cancels a job nobody is running: never claimed, or its owner stopped sending heartbeats
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE SyncJob j SET j.status = 'CANCELLED', j.finishedAt = :now, j.heartbeatAt = :now
+        WHERE j.id = :id AND j.status IN ('QUEUED', 'RUNNING') AND j.cancelRequested = true
+            AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)
+        """)
+    int cancelUnclaimed(@Param("id") Long id, @Param("staleBefore") Instant staleBefore, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE SyncJob j SET j.cancelRequested = true
+        WHERE j.id = :id AND j.userId = :userId AND j.status IN ('QUEUED', 'RUNNING')
+        """)
+    int requestCancel(@Param("id") Long id, @Param("userId") Long userId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SyncJob j SET j.heartbeatAt = :now WHERE j.id IN :ids AND j.owner = :owner AND j.status = 'RUNNING'")
+    int heartbeat(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("now") Instant now);
+
+    // On shutdown: lets the next instance resume these jobs without waiting for the heartbeat to go stale
+    @Modifying
+    @Transactional
+    @Query("UPDATE SyncJob j SET j.heartbeatAt = null WHERE j.id IN :ids AND j.owner = :owner AND j.status = 'RUNNING'")
+    int release(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+}
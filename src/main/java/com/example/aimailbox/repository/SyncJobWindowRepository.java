@@ -0,0 +1,37 @@
+package com.example.aimailbox.repository;
+
+import com.example.aimailbox.model.SyncJobWindow;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface SyncJobWindowRepository extends JpaRepository<SyncJobWindow, Long> {
+
+    // Newest window first
+    List<SyncJobWindow> findByJobIdAndDoneFalseOrderByBeforeEpochDesc(Long jobId);
+
+    long countByJobIdAndDoneFalse(Long jobId);
+
+    // The last page of a window has no next token and completes it
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE SyncJobWindow w SET w.pageToken = :pageToken, w.pagesSynced = w.pagesSynced + 1,
+            w.threadsSynced = w.threadsSynced + :threads, w.done = :done
+        WHERE w.id = :id
+        """)
+    int recordPage(@Param("id") Long id, @Param("pageToken") String pageToken, @Param("threads") int threads,
+                   @Param("done") boolean done);
+
+    // Hands the unfinished windows of an earlier backfill to the job continuing it
+    @Modifying
+    @Transactional
+    @Query("UPDATE SyncJobWindow w SET w.jobId = :toJobId WHERE w.jobId = :fromJobId AND w.done = false")
+    int adopt(@Param("fromJobId") Long fromJobId, @Param("toJobId") Long toJobId);
+}
@@ -1,10 +1,32 @@
 package com.example.aimailbox.repository;
 
 import com.example.aimailbox.model.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
+
+    // Users whose Gmail account is connected, i.e. who can be synced without a request
+    @Query("SELECT u.id FROM User u WHERE u.googleRefreshToken IS NOT NULL")
+    List<Long> findGmailConnectedUserIds();
+
+    // Row lock used to serialize per-user operations such as starting a sync job
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM User u WHERE u.id = :userId")
+    Optional<User> lockById(@Param("userId") Long userId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.gmailHistoryId = :historyId WHERE u.id = :userId")
+    int updateGmailHistoryId(@Param("userId") Long userId, @Param("historyId") String historyId);
 }
 
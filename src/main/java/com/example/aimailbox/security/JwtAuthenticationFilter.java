@@ -2,6 +2,7 @@ package com.example.aimailbox.security;
 
 import com.example.aimailbox.model.User;
 import com.example.aimailbox.repository.UserRepository;
+import com.example.aimailbox.service.UserActivityTracker;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 import jakarta.servlet.FilterChain;
@@ -22,10 +23,13 @@ import java.util.Collections;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtUtil jwtUtil;
     private final UserRepository userRepository;
+    private final UserActivityTracker userActivityTracker;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserRepository userRepository) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserRepository userRepository,
+            UserActivityTracker userActivityTracker) {
         this.jwtUtil = jwtUtil;
         this.userRepository = userRepository;
+        this.userActivityTracker = userActivityTracker;
     }
 
     @Override
@@ -59,6 +63,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(auth);
                 }
+                if (user != null) {
+                    userActivityTracker.recordActivity(userId);
+                }
             } catch (Exception ex) {
                 SecurityContextHolder.clearContext();
             }
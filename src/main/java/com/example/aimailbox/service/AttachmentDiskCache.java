@@ -0,0 +1,305 @@
+package com.example.aimailbox.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Bounded on-disk store for decoded attachments. Gmail attachments are immutable per
+ * (messageId, attachmentId), so once downloaded they are kept as content-addressed blobs
+ * (blobs/&lt;sha256&gt;) with a small ref file per user and attachment pointing at the blob.
+ * Blobs are evicted least-recently-used once the total size exceeds the configured budget,
+ * skipping blobs that are pinned by a response still being served, and their ref files go with them.
+ */
+@Component
+@Slf4j
+public class AttachmentDiskCache {
+    private final Path blobDir;
+    private final Path refDir;
+    private final Path tmpDir;
+    private final long maxBytes;
+
+    // blob hash -> size, in access order
+    private final LinkedHashMap<String, Long> lru = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    // blob hash -> responses serving it
+    private final Map<String, Integer> pins = new HashMap<>();
+    // blob hash -> ref files pointing at it
+    private final Map<String, Set<String>> refsByBlob = new HashMap<>();
+
+    public AttachmentDiskCache(@Value("${attachment-cache.dir:${java.io.tmpdir}/aimailbox-attachments}") String dir,
+                               @Value("${attachment-cache.max-bytes:2147483648}") long maxBytes) {
+        Path root = Paths.get(dir);
+        this.blobDir = root.resolve("blobs");
+        this.refDir = root.resolve("refs");
+        this.tmpDir = root.resolve("tmp");
+        this.maxBytes = maxBytes;
+    }
+
+    @PostConstruct
+    void loadIndex() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(blobDir);
+            Files.createDirectories(refDir);
+            Files.createDirectories(tmpDir);
+            try (Stream<Path> leftovers = Files.list(tmpDir)) {
+                leftovers.forEach(this::deleteQuietly);
+            }
+            List<Path> blobs;
+            try (Stream<Path> files = Files.list(blobDir)) {
+                blobs = files.sorted(Comparator.comparing(this::lastModified)).toList();
+            }
+            List<Path> refs;
+            try (Stream<Path> files = Files.list(refDir)) {
+                refs = files.toList();
+            }
+            synchronized (this) {
+                for (Path blob : blobs) {
+                    long size = Files.size(blob);
+                    lru.put(blob.getFileName().toString(), size);
+                    totalBytes += size;
+                }
+                for (Path ref : refs) {
+                    String hash = Files.readString(ref, StandardCharsets.US_ASCII).trim();
+                    if (lru.containsKey(hash)) {
+                        refsByBlob.computeIfAbsent(hash, h -> new HashSet<>()).add(ref.getFileName().toString());
+                    } else {
+                        deleteQuietly(ref);
+                    }
+                }
+                evictIfNeeded();
+            }
+            log.info("Attachment cache at {} holds {} blobs ({} bytes)", blobDir.getParent(), lru.size(), totalBytes);
+        } catch (IOException e) {
+            log.warn("Attachment cache disabled, cannot use {}: {}", blobDir.getParent(), e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * The cached blob for this attachment, if present. It stays on disk until the returned handle
+     * is closed.
+     */
+    public Optional<CachedBlob> lookup(Long userId, String messageId, String attachmentId) {
+        if (!isEnabled() || userId == null) {
+            return Optional.empty();
+        }
+        Path ref = refDir.resolve(refKey(userId, messageId, attachmentId));
+        try {
+            if (!Files.exists(ref)) {
+                return Optional.empty();
+            }
+            String hash = Files.readString(ref, StandardCharsets.US_ASCII).trim();
+            Path blob = blobDir.resolve(hash);
+            synchronized (this) {
+                if (lru.get(hash) == null || !Files.exists(blob)) {
+                    deleteQuietly(ref);
+                    return Optional.empty();
+                }
+                pins.merge(hash, 1, Integer::sum);
+            }
+            // Persist recency so the LRU order survives restarts
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(new CachedBlob(hash, blob));
+        } catch (IOException e) {
+            log.warn("Attachment cache lookup failed for message {}: {}", messageId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Passes the decoded attachment through while copying it to disk; the blob is only committed
+     * if the stream completes, partial downloads are discarded.
+     */
+    public Flux<DataBuffer> tee(Long userId, String messageId, String attachmentId, Flux<DataBuffer> decoded) {
+        if (!isEnabled() || userId == null) {
+            return decoded;
+        }
+        return Flux.using(
+                () -> new PendingBlob(Files.createTempFile(tmpDir, "attachment", ".part")),
+                pending -> decoded
+                        .publishOn(Schedulers.boundedElastic())
+                        .doOnNext(pending::write)
+                        .doOnComplete(() -> commit(pending, userId, messageId, attachmentId)),
+                PendingBlob::discard);
+    }
+
+    private void commit(PendingBlob pending, Long userId, String messageId, String attachmentId) {
+        try {
+            pending.channel.close();
+            String hash = HexFormat.of().formatHex(pending.digest.digest());
+            Path blob = blobDir.resolve(hash);
+            synchronized (this) {
+                if (lru.containsKey(hash) && Files.exists(blob)) {
+                    lru.get(hash);
+                } else {
+                    Files.move(pending.file, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    lru.put(hash, pending.size);
+                    totalBytes += pending.size;
+                }
+                String ref = refKey(userId, messageId, attachmentId);
+                Files.writeString(refDir.resolve(ref), hash, StandardCharsets.US_ASCII);
+                refsByBlob.computeIfAbsent(hash, h -> new HashSet<>()).add(ref);
+                evictIfNeeded();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to commit attachment {} to cache: {}", attachmentId, e.getMessage());
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Long>> eldest = lru.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (pins.containsKey(entry.getKey())) {
+                // Evicted once the last response serving it is done
+                continue;
+            }
+            Set<String> refs = refsByBlob.remove(entry.getKey());
+            if (refs != null) {
+                refs.forEach(ref -> deleteQuietly(refDir.resolve(ref)));
+            }
+            deleteQuietly(blobDir.resolve(entry.getKey()));
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void unpin(String hash) {
+        if (pins.merge(hash, -1, Integer::sum) <= 0) {
+            pins.remove(hash);
+            evictIfNeeded();
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("blobs", lru.size());
+        result.put("totalBytes", totalBytes);
+        result.put("maxBytes", maxBytes);
+        result.put("pinnedBlobs", pins.size());
+        return result;
+    }
+
+    private static String refKey(Long userId, String messageId, String attachmentId) {
+        return HexFormat.of().formatHex(sha256().digest(
+                (userId + ":" + messageId + ":" + attachmentId).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * A blob pinned against eviction while a response serves it.
+     */
+    public final class CachedBlob implements AutoCloseable {
+        private final String hash;
+        private final Path path;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private CachedBlob(String hash, Path path) {
+            this.hash = hash;
+            this.path = path;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * Keeps the pin for {@code delay} more, for readers that open the file after the request
+         * returns, e.g. Tomcat's sendfile.
+         */
+        public void closeAfter(Duration delay) {
+            Schedulers.parallel().schedule(this::close, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                unpin(hash);
+            }
+        }
+    }
+
+    private class PendingBlob {
+        final Path file;
+        final FileChannel channel;
+        final MessageDigest digest = sha256();
+        long size;
+
+        PendingBlob(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        }
+
+        void write(DataBuffer buffer) {
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    ByteBuffer chunk = iterator.next();
+                    digest.update(chunk.duplicate());
+                    while (chunk.hasRemaining()) {
+                        size += channel.write(chunk);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void discard() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already closed on commit
+            }
+            deleteQuietly(file);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.model.SyncJobMode;
+import com.example.aimailbox.model.SyncJobStatus;
+import com.example.aimailbox.repository.SyncJobRepository;
+import com.example.aimailbox.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps every Gmail-connected user's local index fresh without client requests.
+ * <p>
+ * Due users are dispatched as sync jobs under a global concurrency budget, in weighted-fair
+ * order: each user carries a virtual finish time that grows with the pages its syncs cost divided
+ * by its weight, and the due user with the smallest virtual start goes next, so a huge mailbox
+ * takes at most one slot and falls behind users with little to do. Each user's polling interval
+ * follows an exponentially weighted rate of changes per sync, and is shortened while the user is
+ * active in the app.
+ */
+@Service
+@Slf4j
+public class BackgroundSyncScheduler {
+    private static final double RATE_SMOOTHING = 0.3;
+    // A sync is worth running when about this many changes are expected
+    private static final double TARGET_CHANGES_PER_SYNC = 5.0;
+    private static final double ACTIVE_WEIGHT = 4.0;
+    private static final Duration USER_REFRESH_INTERVAL = Duration.ofMinutes(5);
+    // A slot is only checked against the database once its job has had time to start
+    private static final Duration SLOT_CHECK_AFTER = Duration.ofMinutes(2);
+    private static final Set<SyncJobStatus> ACTIVE = EnumSet.of(SyncJobStatus.QUEUED, SyncJobStatus.RUNNING);
+
+    private final SyncJobService syncJobService;
+    private final SyncJobRepository syncJobRepository;
+    private final UserRepository userRepository;
+    private final UserActivityTracker userActivityTracker;
+    private final FuzzySearchService fuzzySearchService;
+    private final boolean enabled;
+    private final int maxConcurrent;
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final Duration activeWindow;
+
+    private final Map<Long, UserSchedule> schedules = new ConcurrentHashMap<>();
+    // User id to dispatch time
+    private final Map<Long, Instant> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private volatile double virtualTime = 0;
+    private volatile Instant usersRefreshedAt = Instant.EPOCH;
+
+    private static class UserSchedule {
+        Instant nextDueAt;
+        Duration interval;
+        Instant lastSyncAt;
+        double changesPerMinute;
+        double virtualFinish;
+        double virtualStart;
+    }
+
+    public BackgroundSyncScheduler(SyncJobService syncJobService,
+                                   SyncJobRepository syncJobRepository,
+                                   UserRepository userRepository,
+                                   UserActivityTracker userActivityTracker,
+                                   FuzzySearchService fuzzySearchService,
+                                   @Value("${sync.scheduler.enabled:true}") boolean enabled,
+                                   @Value("${sync.scheduler.max-concurrent:4}") int maxConcurrent,
+                                   @Value("${sync.scheduler.min-interval-seconds:60}") long minIntervalSeconds,
+                                   @Value("${sync.scheduler.max-interval-seconds:1800}") long maxIntervalSeconds,
+                                   @Value("${sync.scheduler.active-window-minutes:15}") long activeWindowMinutes) {
+        this.syncJobService = syncJobService;
+        this.syncJobRepository = syncJobRepository;
+        this.userRepository = userRepository;
+        this.userActivityTracker = userActivityTracker;
+        this.fuzzySearchService = fuzzySearchService;
+        this.enabled = enabled;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.minInterval = Duration.ofSeconds(Math.max(1, minIntervalSeconds));
+        this.maxInterval = Duration.ofSeconds(Math.max(minIntervalSeconds, maxIntervalSeconds));
+        this.activeWindow = Duration.ofMinutes(activeWindowMinutes);
+    }
+
+    @Scheduled(fixedDelayString = "${sync.scheduler.tick-ms:10000}", initialDelayString = "${sync.scheduler.tick-ms:10000}")
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Instant now = Instant.now();
+            refreshUsers(now);
+            reclaimSlots(now);
+            dispatchDue(now);
+        } catch (Exception e) {
+            log.error("Background sync scheduling failed", e);
+        }
+    }
+
+    @EventListener
+    public void onSyncJobFinished(SyncJobFinishedEvent event) {
+        // Freed first, so a user dropped from the schedule meanwhile cannot keep the slot
+        boolean dispatchedHere = inFlight.remove(event.userId()) != null;
+        UserSchedule schedule = schedules.get(event.userId());
+        if (schedule == null || !dispatchedHere) {
+            // A job started by a client or resumed after a restart, or a user no longer connected
+            if (dispatchedHere) {
+                Schedulers.boundedElastic().schedule(this::tick);
+            }
+            return;
+        }
+        completed.incrementAndGet();
+        Instant now = Instant.now();
+        synchronized (schedule) {
+            boolean succeeded = event.status() == SyncJobStatus.SUCCEEDED;
+            // A backfill imports old mail, which says nothing about how fast new mail arrives
+            if (succeeded && schedule.lastSyncAt != null && event.mode() != SyncJobMode.BACKFILL) {
+                double minutes = Math.max(1.0, Duration.between(schedule.lastSyncAt, now).toSeconds() / 60.0);
+                double rate = event.threadsSynced() / minutes;
+                schedule.changesPerMinute = RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * schedule.changesPerMinute;
+            }
+            if (succeeded) {
+                schedule.lastSyncAt = now;
+            }
+            // Cost in pages of 50 threads; a sync with nothing new still costs one
+            double cost = Math.max(1.0, Math.ceil(event.threadsSynced() / 50.0));
+            schedule.virtualFinish = schedule.virtualStart + cost / weight(event.userId(), now);
+            schedule.interval = succeeded ? adaptedInterval(schedule) : backoff(schedule.interval);
+            schedule.nextDueAt = now.plus(effectiveInterval(event.userId(), schedule, now));
+        }
+        if (event.threadsSynced() > 0) {
+            userRepository.findById(event.userId()).ifPresent(user -> fuzzySearchService.refreshDataIfCached(user)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe(null, error -> log.warn("Search cache refresh failed for user {}: {}",
+                            event.userId(), error.getMessage())));
+        }
+        // Hand the freed slot on without waiting for the next tick
+        Schedulers.boundedElastic().schedule(this::tick);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("users", schedules.size());
+        stats.put("inFlight", inFlight.size());
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("dispatched", dispatched.get());
+        stats.put("completed", completed.get());
+        stats.put("reclaimedSlots", reclaimed.get());
+        stats.put("virtualTime", virtualTime);
+        return stats;
+    }
+
+    private void refreshUsers(Instant now) {
+        if (Duration.between(usersRefreshedAt, now).compareTo(USER_REFRESH_INTERVAL) < 0) {
+            return;
+        }
+        Set<Long> connected = new HashSet<>(userRepository.findGmailConnectedUserIds());
+        schedules.keySet().retainAll(connected);
+        inFlight.keySet().retainAll(connected);
+        for (Long userId : connected) {
+            schedules.computeIfAbsent(userId, id -> {
+                UserSchedule schedule = new UserSchedule();
+                schedule.interval = minInterval;
+                // Spread first syncs over one interval instead of starting everyone at once
+                schedule.nextDueAt = now.plusMillis(ThreadLocalRandom.current().nextLong(minInterval.toMillis() + 1));
+                // New users join at the current virtual time, not ahead of everyone
+                schedule.virtualFinish = virtualTime;
+                return schedule;
+            });
+        }
+        usersRefreshedAt = now;
+    }
+
+    /**
+     * Frees slots whose job ended without a {@link SyncJobFinishedEvent} reaching us, e.g. when
+     * recording its end failed, so lost events cannot stall background sync for everyone.
+     */
+    private void reclaimSlots(Instant now) {
+        for (Map.Entry<Long, Instant> entry : inFlight.entrySet()) {
+            Long userId = entry.getKey();
+            if (entry.getValue().plus(SLOT_CHECK_AFTER).isAfter(now)
+                    || syncJobRepository.existsByUserIdAndStatusIn(userId, ACTIVE)) {
+                continue;
+            }
+            if (inFlight.remove(userId, entry.getValue())) {
+                reclaimed.incrementAndGet();
+                log.warn("Reclaimed the background sync slot of user {}, its job ended unnoticed", userId);
+                UserSchedule schedule = schedules.get(userId);
+                if (schedule != null) {
+                    synchronized (schedule) {
+                        schedule.nextDueAt = now.plus(schedule.interval);
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void dispatchDue(Instant now) {
+        int free = maxConcurrent - inFlight.size();
+        if (free <= 0) {
+            return;
+        }
+        List<Map.Entry<Long, UserSchedule>> due = schedules.entrySet().stream()
+                .filter(entry -> !inFlight.containsKey(entry.getKey()))
+                .filter(entry -> !dueAt(entry.getKey(), entry.getValue(), now).isAfter(now))
+                .sorted(Comparator.comparingDouble(entry -> virtualStart(entry.getValue())))
+                .toList();
+        for (Map.Entry<Long, UserSchedule> entry : due) {
+            if (free <= 0) {
+                break;
+            }
+            Long userId = entry.getKey();
+            UserSchedule schedule = entry.getValue();
+            synchronized (schedule) {
+                schedule.virtualStart = virtualStart(schedule);
+                virtualTime = Math.max(virtualTime, schedule.virtualStart);
+            }
+            inFlight.put(userId, now);
+            boolean runsHere;
+            try {
+                runsHere = syncJobService.startInBackground(userId);
+            } catch (Exception e) {
+                log.warn("Background sync for user {} could not start: {}", userId, e.getMessage());
+                runsHere = false;
+            }
+            if (runsHere) {
+                dispatched.incrementAndGet();
+                free--;
+            } else {
+                // Already running elsewhere (client request, another instance); check again later
+                inFlight.remove(userId);
+                synchronized (schedule) {
+                    schedule.nextDueAt = now.plus(minInterval);
+                }
+            }
+        }
+    }
+
+    private double virtualStart(UserSchedule schedule) {
+        return Math.max(virtualTime, schedule.virtualFinish);
+    }
+
+    private Instant dueAt(Long userId, UserSchedule schedule, Instant now) {
+        // Becoming active pulls a far-off sync forward
+        Instant activeDue = schedule.lastSyncAt != null && isActive(userId, now)
+                ? schedule.lastSyncAt.plus(minInterval)
+                : schedule.nextDueAt;
+        return activeDue.isBefore(schedule.nextDueAt) ? activeDue : schedule.nextDueAt;
+    }
+
+    private Duration adaptedInterval(UserSchedule schedule) {
+        if (schedule.changesPerMinute <= 0) {
+            return clamp(schedule.interval.multipliedBy(2));
+        }
+        long seconds = (long) (TARGET_CHANGES_PER_SYNC / schedule.changesPerMinute * 60);
+        return clamp(Duration.ofSeconds(seconds));
+    }
+
+    private Duration backoff(Duration interval) {
+        return clamp(interval.multipliedBy(2));
+    }
+
+    private Duration effectiveInterval(Long userId, UserSchedule schedule, Instant now) {
+        return isActive(userId, now) ? minInterval : schedule.interval;
+    }
+
+    private Duration clamp(Duration interval) {
+        if (interval.compareTo(minInterval) < 0) {
+            return minInterval;
+        }
+        return interval.compareTo(maxInterval) > 0 ? maxInterval : interval;
+    }
+
+    private double weight(Long userId, Instant now) {
+        return isActive(userId, now) ? ACTIVE_WEIGHT : 1.0;
+    }
+
+    private boolean isActive(Long userId, Instant now) {
+        Instant lastSeen = userActivityTracker.lastSeen(userId);
+        return lastSeen != null && lastSeen.isAfter(now.minus(activeWindow));
+    }
+}
@@ -8,6 +8,7 @@ import com.example.aimailbox.dto.response.ThreadDetailResponse; // Add missing i
 import com.example.aimailbox.model.Email;
 import com.example.aimailbox.model.EmailStatus;
 import com.example.aimailbox.model.User;
+import com.example.aimailbox.repository.EmailBulkRepository;
 import com.example.aimailbox.repository.EmailRepository;
 import com.example.aimailbox.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
@@ -21,9 +22,16 @@ import org.springframework.data.domain.Sort;
 import com.example.aimailbox.dto.request.ModifyEmailRequest;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,7 +42,9 @@ public class EmailService {
     private final EmailRepository emailRepository;
     private final UserRepository userRepository;
     private final ProxyMailService proxyMailService;
-    private final EmbeddingService embeddingService;
+    private final EmbeddingStore embeddingStore;
+    private final SnoozeIndex snoozeIndex;
+    private final EmailBulkRepository emailBulkRepository;
 
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -240,6 +250,7 @@ public class EmailService {
         email.setSnoozedUntil(request.getSnoozeUntil());
         
         email = emailRepository.save(email);
+        snoozeIndex.snooze(user.getId(), email.getThreadId(), email.getSnoozedUntil());
         log.info("Snoozed email {} until {}", id, request.getSnoozeUntil());
         
         try {
@@ -288,6 +299,7 @@ public class EmailService {
         email.setSnoozedUntil(request.getSnoozeUntil());
         
         email = emailRepository.save(email);
+        snoozeIndex.snooze(user.getId(), email.getThreadId(), email.getSnoozedUntil());
         log.info("Snoozed email (threadId={}) until {}", threadId, request.getSnoozeUntil());
         
         try {
@@ -322,76 +334,171 @@ public class EmailService {
      */
     @Transactional
     public Email saveThreadToDatabase(User user, ThreadDetailResponse threadDetail) {
-         if (threadDetail == null || threadDetail.getMessages() == null || threadDetail.getMessages().isEmpty()) {
-             return null;
-         }
-         
-         String threadId = threadDetail.getId();
-         
-         var firstMsg = threadDetail.getMessages().get(0);
-         String subject = firstMsg.getSubject() != null ? firstMsg.getSubject() : "(No Subject)";
-         var labelIds = threadDetail.getLabelIds();
-         boolean isRead = labelIds == null || !labelIds.contains("UNREAD");
-         boolean isStarred = labelIds != null && labelIds.contains("STARRED"); 
-
-         String labelIdsString = null;
-         if (labelIds != null && !labelIds.isEmpty()) {
-             labelIdsString = String.join(",", labelIds);
-         }
+        if (!hasMessages(threadDetail)) {
+            return null;
+        }
+        Email email = emailRepository.findByUserAndThreadId(user, threadDetail.getId())
+                .orElse(Email.builder()
+                        .user(user)
+                        .threadId(threadDetail.getId())
+                        .build());
+        String text = embeddingText(threadDetail);
+        String hash = EmbeddingStore.contentHash(text);
+        // Unchanged content keeps its vector without an embedding call
+        if (!hash.equals(email.getContentHash()) || email.getEmbedding() == null) {
+            try {
+                float[] embedding = embeddingStore.resolve(Map.of(hash, text)).get(hash);
+                if (embedding != null && embedding.length > 0) {
+                    email.setEmbedding(embedding);
+                    email.setContentHash(hash);
+                }
+            } catch (Exception e) {
+                log.error("Failed to generate embedding", e);
+            }
+        }
+        applyThread(email, threadDetail);
+        email.setStatus(EmailStatus.INBOX);
+        return emailRepository.save(email);
+    }
+
+    /**
+     * Saves a page of synced threads with one batched upsert. Unlike {@link #saveThreadToDatabase},
+     * threads already stored keep their local status (snoozed, kanban column, ...). Only threads
+     * whose embedded text changed are embedded again, through the shared {@link EmbeddingStore}.
+     */
+    public int saveThreadsToDatabase(User user, List<ThreadDetailResponse> threadDetails) {
+        PreparedThreads prepared = prepareThreads(user, threadDetails);
+        applyEmbeddings(prepared, embeddingStore.resolve(prepared.changedTexts()));
+        return emailBulkRepository.upsertThreads(prepared.emails());
+    }
+
+    /**
+     * Rows for a page of threads, without embeddings, plus the texts whose hash differs from the
+     * stored one and therefore need a vector. Blocking: reads the stored hashes.
+     */
+    public PreparedThreads prepareThreads(User user, List<ThreadDetailResponse> threadDetails) {
+        List<ThreadDetailResponse> threads = threadDetails.stream()
+                .filter(EmailService::hasMessages)
+                .toList();
+        if (threads.isEmpty()) {
+            return new PreparedThreads(List.of(), List.of(), Map.of());
+        }
+        Map<String, String> storedHashes = new HashMap<>();
+        for (Object[] row : emailRepository.findEmbeddedContentHashes(user.getId(),
+                threads.stream().map(ThreadDetailResponse::getId).toList())) {
+            storedHashes.put((String) row[0], (String) row[1]);
+        }
+        List<Email> emails = new ArrayList<>(threads.size());
+        List<String> hashes = new ArrayList<>(threads.size());
+        Map<String, String> changedTexts = new LinkedHashMap<>();
+        for (ThreadDetailResponse thread : threads) {
+            Email email = Email.builder()
+                    .user(user)
+                    .threadId(thread.getId())
+                    .build();
+            applyThread(email, thread);
+            emails.add(email);
+            String text = embeddingText(thread);
+            String hash = EmbeddingStore.contentHash(text);
+            hashes.add(hash);
+            if (!hash.equals(storedHashes.get(thread.getId()))) {
+                changedTexts.put(hash, text);
+            }
+        }
+        return new PreparedThreads(emails, hashes, changedTexts);
+    }
+
+    /**
+     * Sets the resolved vectors on changed rows. Rows left without one (unchanged, or embedding
+     * failed) keep their stored vector and hash in the upsert.
+     */
+    public void applyEmbeddings(PreparedThreads prepared, Map<String, float[]> vectors) {
+        for (int i = 0; i < prepared.emails().size(); i++) {
+            String hash = prepared.hashes().get(i);
+            float[] embedding = prepared.changedTexts().containsKey(hash) ? vectors.get(hash) : null;
+            if (embedding != null && embedding.length > 0) {
+                prepared.emails().get(i).setEmbedding(embedding);
+                prepared.emails().get(i).setContentHash(hash);
+            }
+        }
+    }
+
+    public record PreparedThreads(List<Email> emails, List<String> hashes, Map<String, String> changedTexts) {
+    }
+
+    private static boolean hasMessages(ThreadDetailResponse threadDetail) {
+        return threadDetail != null && threadDetail.getMessages() != null && !threadDetail.getMessages().isEmpty();
+    }
+
+    private static String embeddingText(ThreadDetailResponse threadDetail) {
+        var firstMsg = threadDetail.getMessages().get(0);
+        String subject = firstMsg.getSubject() != null ? firstMsg.getSubject() : "(No Subject)";
         StringBuilder conversationBuilder = new StringBuilder();
-         // Check for attachments
-         boolean hasAttachments = false;
-         for (var msg : threadDetail.getMessages()) {
-             if (msg.getAttachments() != null && !msg.getAttachments().isEmpty()) {
-                 hasAttachments = true;
-             }
-             String sender = msg.getFrom() != null ? msg.getFrom() : "Unknown";
-             String rawBody = msg.getTextBody() != null ? msg.getTextBody() : "" ;
-             String cleanBody = rawBody != null ? rawBody.replaceAll("\\<.*?\\>", "").trim() : "";
-             if (!cleanBody.isEmpty()) {
-                 conversationBuilder.append("\n[From: ").append(sender).append("]: ").append(cleanBody);
-             }
-
-         }
+        for (var msg : threadDetail.getMessages()) {
+            String sender = msg.getFrom() != null ? msg.getFrom() : "Unknown";
+            String rawBody = msg.getTextBody() != null ? msg.getTextBody() : "";
+            String cleanBody = rawBody.replaceAll("\\<.*?\\>", "").trim();
+            if (!cleanBody.isEmpty()) {
+                conversationBuilder.append("\n[From: ").append(sender).append("]: ").append(cleanBody);
+            }
+        }
         String fullConversation = conversationBuilder.toString();
-        String textToEmbed = "Subject: " + subject + ". " + subject + ". " + subject + ".\n" +
+        return "Subject: " + subject + ". " + subject + ". " + subject + ".\n" +
                 "Content: " + (fullConversation.length() > 5000 ? fullConversation.substring(0, 5000) : fullConversation);
-        float[] embedding = null;
-        try {
-            embedding = embeddingService.getEmbedding(textToEmbed).block();
-        } catch (Exception e) {
-            log.error("Failed to generate embedding", e);
-        }
-         // Parse date
-         Instant receivedAt = Instant.now();
-         if (firstMsg.getDate() != null) {
-             try {
+    }
+
+    // Copies the Gmail-derived columns; status and snooze state are left to the caller
+    private static void applyThread(Email email, ThreadDetailResponse threadDetail) {
+        var firstMsg = threadDetail.getMessages().get(0);
+        var labelIds = threadDetail.getLabelIds();
+        boolean hasAttachments = threadDetail.getMessages().stream()
+                .anyMatch(msg -> msg.getAttachments() != null && !msg.getAttachments().isEmpty());
+        Instant receivedAt = Instant.now();
+        if (firstMsg.getDate() != null) {
+            try {
                 receivedAt = Instant.parse(firstMsg.getDate());
-             } catch (Exception e) {
-                 // Fallback
-             }
-         }
-         Email email = emailRepository.findByUserAndThreadId(user, threadId)
-                 .orElse(Email.builder()
-                         .user(user)
-                         .threadId(threadId)
-                         .build());
-         
-         email.setFrom(firstMsg.getFrom());
-         email.setTo(firstMsg.getTo());
-         email.setSubject(firstMsg.getSubject());
-         email.setSnippet(threadDetail.getSnippet());
-         email.setBody(firstMsg.getTextBody() != null ? firstMsg.getTextBody() : firstMsg.getHtmlBody());
-         email.setStatus(EmailStatus.INBOX); 
-         email.setLabelIds(labelIdsString); 
-         email.setIsRead(isRead);
-         email.setIsStarred(isStarred);
-         email.setHasAttachments(hasAttachments);
-         email.setReceivedAt(receivedAt);
-        if (embedding != null && embedding.length > 0) {
-            email.setEmbedding(embedding);
+            } catch (Exception e) {
+                // Fallback
+            }
+        }
+        email.setFrom(firstMsg.getFrom());
+        email.setTo(firstMsg.getTo());
+        email.setSubject(firstMsg.getSubject());
+        email.setSnippet(threadDetail.getSnippet());
+        email.setBody(firstMsg.getTextBody() != null ? firstMsg.getTextBody() : firstMsg.getHtmlBody());
+        email.setLabelIds(labelIds != null && !labelIds.isEmpty() ? String.join(",", labelIds) : null);
+        email.setIsRead(labelIds == null || !labelIds.contains("UNREAD"));
+        email.setIsStarred(labelIds != null && labelIds.contains("STARRED"));
+        email.setHasAttachments(hasAttachments);
+        email.setReceivedAt(receivedAt);
+    }
+
+    /**
+     * Replace a thread's labels with the ones Gmail currently reports, without re-fetching its messages
+     */
+    @Transactional
+    public void applyThreadLabels(User user, String threadId, Collection<String> threadLabelIds) {
+        Email email = emailRepository.findByUserAndThreadId(user, threadId).orElse(null);
+        if (email == null) {
+            return;
+        }
+        Set<String> labelIds = new LinkedHashSet<>(threadLabelIds);
+        email.setLabelIds(labelIds.isEmpty() ? null : String.join(",", labelIds));
+        email.setIsRead(!labelIds.contains("UNREAD"));
+        email.setIsStarred(labelIds.contains("STARRED"));
+        emailRepository.save(email);
+    }
+
+    /**
+     * Remove a thread that no longer exists in Gmail
+     */
+    @Transactional
+    public void deleteThreadFromDatabase(User user, String threadId) {
+        long deleted = emailRepository.deleteByUserAndThreadId(user, threadId);
+        snoozeIndex.unsnooze(user.getId(), threadId);
+        if (deleted > 0) {
+            log.info("Removed thread {} deleted in Gmail", threadId);
         }
-         return emailRepository.save(email);
     }
 
     /**
@@ -419,6 +526,7 @@ public class EmailService {
         email.setPreviousLabelIds(null); // Clear previous label
         
         email = emailRepository.save(email);
+        snoozeIndex.unsnooze(user.getId(), email.getThreadId());
         log.info("Unsnoozed email {} back to {}", id, restoreStatus);
         
         if (previousLabelId != null && !previousLabelId.isEmpty()) {
@@ -470,6 +578,7 @@ public class EmailService {
                 email.setPreviousLabelIds(null);
                 
                 emailRepository.save(email);
+                snoozeIndex.unsnooze(email.getUser().getId(), email.getThreadId());
                 log.info("Auto-restored email {} from snooze to {}", email.getId(), restoreStatus);
                 
                 try {
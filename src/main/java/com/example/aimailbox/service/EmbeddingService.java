@@ -1,60 +1,156 @@
 package com.example.aimailbox.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
-
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Text embeddings through Gemini. Callers get one Mono per text; pending texts are coalesced
+ * into {@code batchEmbedContents} calls of up to {@code maxBatchSize} texts or {@code maxWaitMs}
+ * of waiting, with at most {@code maxConcurrentBatches} calls in flight.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class EmbeddingService {
+    public static final String MODEL = "models/text-embedding-004";
+    private static final String BATCH_URL =
+            "https://generativelanguage.googleapis.com/v1beta/" + MODEL + ":batchEmbedContents?key=";
+    private static final int MAX_TEXT_LENGTH = 8000;
+
     private final WebClient googleGenerativeClient;
-    @Value("${google.generative-api-key}")
-    private String apiKey;
+    private final String apiKey;
+    private final int maxBatchSize;
+    private final Duration maxWait;
+    private final int maxConcurrentBatches;
+
+    private final Sinks.Many<PendingEmbedding> pending = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong texts = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private Disposable dispatcher;
+
+    private record PendingEmbedding(String text, Sinks.One<float[]> result) {
+    }
 
+    public EmbeddingService(
+            WebClient googleGenerativeClient,
+            @Value("${google.generative-api-key}") String apiKey,
+            // batchEmbedContents accepts at most 100 requests per call
+            @Value("${embedding.batch.max-size:100}") int maxBatchSize,
+            @Value("${embedding.batch.max-wait-ms:50}") long maxWaitMs,
+            @Value("${embedding.batch.max-concurrency:4}") int maxConcurrentBatches) {
+        this.googleGenerativeClient = googleGenerativeClient;
+        this.apiKey = apiKey;
+        this.maxBatchSize = Math.min(Math.max(1, maxBatchSize), 100);
+        this.maxWait = Duration.ofMillis(Math.max(1, maxWaitMs));
+        this.maxConcurrentBatches = Math.max(1, maxConcurrentBatches);
+    }
+
+    @PostConstruct
+    void startDispatcher() {
+        dispatcher = pending.asFlux()
+                .bufferTimeout(maxBatchSize, maxWait, true)
+                .flatMap(this::embedBatch, maxConcurrentBatches)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stopDispatcher() {
+        pending.tryEmitComplete();
+        if (dispatcher != null) {
+            dispatcher.dispose();
+        }
+    }
+
+    /**
+     * Embedding of {@code text}; empty for blank text, and an error when the call fails or Gemini
+     * returns no vector, so callers never mistake a failure for a vector worth storing.
+     */
     public Mono<float[]> getEmbedding(String text) {
         if (text == null || text.isBlank()) {
-            return Mono.just(new float[0]);
+            return Mono.empty();
         }
+        return Mono.defer(() -> {
+            Sinks.One<float[]> result = Sinks.one();
+            String truncatedText = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+            Sinks.EmitResult emitted;
+            // The unicast sink takes one producer at a time
+            synchronized (pending) {
+                emitted = pending.tryEmitNext(new PendingEmbedding(truncatedText, result));
+            }
+            if (emitted.isFailure()) {
+                return Mono.error(new IllegalStateException("Could not queue embedding request: " + emitted));
+            }
+            return result.asMono();
+        });
+    }
 
-        String truncatedText = text.length() > 8000 ? text.substring(0, 8000) : text;
-        String url = "https://generativelanguage.googleapis.com/v1beta/models/text-embedding-004:embedContent?key=" + apiKey;
+    public Map<String, Object> stats() {
+        long batchCount = batches.get();
+        return Map.of(
+                "batches", batchCount,
+                "texts", texts.get(),
+                "failedBatches", failedBatches.get(),
+                "averageBatchSize", batchCount == 0 ? 0.0 : (double) texts.get() / batchCount);
+    }
 
-        Map<String, Object> body = Map.of(
-                "model", "models/text-embedding-004",
-                "content", Map.of("parts", List.of(Map.of("text", truncatedText)))
-        );
+    private Mono<Void> embedBatch(List<PendingEmbedding> batch) {
+        batches.incrementAndGet();
+        texts.addAndGet(batch.size());
+        Map<String, Object> body = Map.of("requests", batch.stream()
+                .map(item -> Map.of(
+                        "model", MODEL,
+                        "content", Map.of("parts", List.of(Map.of("text", item.text())))))
+                .toList());
 
         return googleGenerativeClient.post()
-                .uri(url)
+                .uri(BATCH_URL + apiKey)
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(body)
                 .retrieve()
                 .bodyToMono(JsonNode.class)
-                .map(json -> {
-                    JsonNode valuesNode = json.path("embedding").path("values");
-                    if (valuesNode.isArray()) {
-                        // Convert JSON Array sang float[]
-                        float[] vector = new float[valuesNode.size()];
-                        for (int i = 0; i < valuesNode.size(); i++) {
-                            vector[i] = (float) valuesNode.get(i).asDouble();
+                .doOnNext(json -> {
+                    JsonNode embeddings = json.path("embeddings");
+                    for (int i = 0; i < batch.size(); i++) {
+                        float[] vector = toVector(embeddings.path(i).path("values"));
+                        if (vector.length > 0) {
+                            batch.get(i).result().tryEmitValue(vector);
                         }
-                        return vector;
                     }
-                    return new float[0];
                 })
+                .then()
                 .onErrorResume(e -> {
-                    log.error("Error generating embedding: {}", e.getMessage());
-                    return Mono.just(new float[0]);
-                });
+                    failedBatches.incrementAndGet();
+                    log.error("Error generating embeddings for {} texts: {}", batch.size(), e.getMessage());
+                    batch.forEach(item -> item.result().tryEmitError(e));
+                    return Mono.empty();
+                })
+                // Anything not completed above (short or malformed response) fails
+                .doFinally(signal -> batch.forEach(item -> item.result().tryEmitError(
+                        new IllegalStateException("No embedding returned"))));
+    }
+
+    private static float[] toVector(JsonNode valuesNode) {
+        if (!valuesNode.isArray()) {
+            return new float[0];
+        }
+        float[] vector = new float[valuesNode.size()];
+        for (int i = 0; i < valuesNode.size(); i++) {
+            vector[i] = (float) valuesNode.get(i).asDouble();
+        }
+        return vector;
     }
 }
@@ -0,0 +1,92 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.model.EmbeddingCacheEntry;
+import com.example.aimailbox.repository.EmbeddingCacheRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed embeddings shared across re-syncs and users: texts are keyed by a hash of
+ * the model and the text, and only hashes missing from {@code embedding_cache} go to Gemini.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EmbeddingStore {
+    private final EmbeddingCacheRepository embeddingCacheRepository;
+    private final EmbeddingService embeddingService;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public static String contentHash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(EmbeddingService.MODEL.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Vectors for the given hash to text entries; blocking. Hashes whose embedding failed are
+     * absent from the result and never stored, so the next sync asks again.
+     */
+    public Map<String, float[]> resolve(Map<String, String> textsByHash) {
+        Map<String, float[]> vectors = new HashMap<>();
+        if (textsByHash.isEmpty()) {
+            return vectors;
+        }
+        for (EmbeddingCacheEntry entry : embeddingCacheRepository.findAllById(textsByHash.keySet())) {
+            vectors.put(entry.getContentHash(), entry.getEmbedding());
+        }
+        Map<String, String> missing = new LinkedHashMap<>(textsByHash);
+        missing.keySet().removeAll(vectors.keySet());
+        hits.addAndGet(vectors.size());
+        misses.addAndGet(missing.size());
+        if (missing.isEmpty()) {
+            return vectors;
+        }
+
+        Map<String, float[]> fresh = Flux.fromIterable(missing.entrySet())
+                .flatMap(entry -> embeddingService.getEmbedding(entry.getValue())
+                        .map(vector -> Map.entry(entry.getKey(), vector))
+                        .onErrorResume(e -> Mono.empty()), missing.size())
+                .filter(entry -> entry.getValue().length > 0)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .block();
+        if (fresh != null) {
+            fresh.forEach((hash, vector) -> {
+                try {
+                    embeddingCacheRepository.insertIfAbsent(hash, EmbeddingService.MODEL, vector);
+                } catch (Exception e) {
+                    log.warn("Failed to store embedding {}: {}", hash, e.getMessage());
+                }
+            });
+            vectors.putAll(fresh);
+        }
+        return vectors;
+    }
+
+    public Map<String, Object> stats() {
+        long total = hits.get() + misses.get();
+        return Map.of(
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "hitRate", total == 0 ? 0.0 : (double) hits.get() / total);
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.aimailbox.service;
 
+import com.example.aimailbox.config.GmailPriority;
+import com.example.aimailbox.dto.response.GmailBatchItem;
 import com.example.aimailbox.dto.response.MessageDetailResponse;
 import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import com.example.aimailbox.dto.response.mail.Thread;
 import com.example.aimailbox.helper.UserHelper;
 import com.example.aimailbox.model.User;
 import com.github.benmanes.caffeine.cache.Cache;
@@ -18,7 +21,6 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 import reactor.util.context.Context;
 
 import java.util.Comparator;
@@ -41,6 +43,14 @@ public class FuzzySearchService {
         return userHelper.getCurrentUser()
                 .flatMap(this::syncRecentMails);
     }
+
+    /**
+     * Refreshes the search cache of a user outside a request, e.g. after a background sync.
+     * Users nobody searched for recently are skipped.
+     */
+    public Mono<Void> refreshDataIfCached(User user) {
+        return userCache.getIfPresent(user.getEmail()) != null ? syncRecentMails(user) : Mono.empty();
+    }
     public Mono<List<ThreadDetailResponse>> searchFuzzyEmails(String query) {
         return userHelper.getCurrentUser()
                 .map(user -> searchInCache(query,user.getEmail()));
@@ -52,13 +62,12 @@ public class FuzzySearchService {
                     if (response == null || response.getThreads() == null || response.getThreads().isEmpty()) {
                         return Flux.empty();
                     }
-                    return Flux.fromIterable(response.getThreads());
+                    return proxyMailService.getThreadDetails(response.getThreads().stream()
+                            .map(Thread::getId)
+                            .toList());
                 })
-                .parallel()
-                .runOn(Schedulers.boundedElastic())
-                .flatMap(shortThread -> proxyMailService.getThreadDetail(shortThread.getId())
-                        .onErrorResume(e -> Mono.empty()))
-                .sequential()
+                .filter(GmailBatchItem::isSuccess)
+                .map(GmailBatchItem::getBody)
                 .collectList()
                 .doOnNext(details -> {
                     if (details.isEmpty()) {
@@ -69,7 +78,7 @@ public class FuzzySearchService {
                 })
                 .doOnError(e -> log.error("SYNC FAILED with fatal error: ", e))
                 .then()
-                .contextWrite(Context.of(Authentication.class, auth));
+                .contextWrite(Context.of(Authentication.class, auth, GmailPriority.class, GmailPriority.BACKGROUND));
     }
     private List<ThreadDetailResponse> searchInCache(String query,String userEmail) {
         List<ThreadDetailResponse> currentData = userCache.getIfPresent(userEmail);
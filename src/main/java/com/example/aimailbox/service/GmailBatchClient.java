@@ -0,0 +1,188 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.config.GmailQuotaFilter;
+import com.example.aimailbox.dto.response.GmailBatchItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpInputMessage;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.http.codec.multipart.PartEventHttpMessageReader;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriTemplate;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Client for Gmail's batch endpoint. Packs up to 50 GET sub-requests into one multipart/mixed call
+ * and streams the multipart response back, one {@link GmailBatchItem} per sub-request.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GmailBatchClient {
+    public static final int MAX_BATCH_SIZE = 50;
+    private static final String BATCH_URL = "https://gmail.googleapis.com/batch/gmail/v1";
+    private static final String API_PREFIX = "/gmail/v1/users/me";
+    private static final int MAX_PART_SIZE = 10 * 1024 * 1024;
+    private static final int CONCURRENT_BATCHES = 2;
+
+    private final WebClient gmailWebClient;
+    private final ObjectMapper objectMapper;
+    private final PartEventHttpMessageReader partReader = new PartEventHttpMessageReader();
+
+    /**
+     * Runs one GET per id against {@code pathTemplate} (relative to users/me, with an {id} variable),
+     * e.g. {@code /threads/{id}?format=full}. Failed sub-requests are emitted with their status and error.
+     */
+    public <T> Flux<GmailBatchItem<T>> get(List<String> ids, String pathTemplate, Class<T> type) {
+        if (ids == null || ids.isEmpty()) {
+            return Flux.empty();
+        }
+        UriTemplate template = new UriTemplate(API_PREFIX + pathTemplate);
+        return Flux.fromIterable(ids)
+                .buffer(MAX_BATCH_SIZE)
+                .flatMap(chunk -> executeBatch(chunk, template, type)
+                                .onErrorResume(e -> {
+                                    log.warn("Gmail batch of {} requests failed: {}", chunk.size(), e.getMessage());
+                                    return Flux.fromIterable(chunk)
+                                            .map(id -> new GmailBatchItem<T>(id, 0, null, e.getMessage()));
+                                }),
+                        CONCURRENT_BATCHES);
+    }
+
+    private <T> Flux<GmailBatchItem<T>> executeBatch(List<String> ids, UriTemplate template, Class<T> type) {
+        String boundary = "batch_" + UUID.randomUUID().toString().replace("-", "");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < ids.size(); i++) {
+            body.append("--").append(boundary).append("\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: <item-").append(i).append(">\r\n\r\n")
+                    .append("GET ").append(template.expand(ids.get(i))).append("\r\n\r\n");
+        }
+        body.append("--").append(boundary).append("--\r\n");
+
+        return gmailWebClient.post()
+                .uri(BATCH_URL)
+                // Gmail charges every inner request, not the batch envelope
+                .attribute(GmailQuotaFilter.QUOTA_UNITS_ATTRIBUTE,
+                        ids.size() * GmailQuotaFilter.unitsFor(HttpMethod.GET, template.toString()))
+                .contentType(MediaType.parseMediaType("multipart/mixed; boundary=" + boundary))
+                .bodyValue(body.toString())
+                .exchangeToFlux(response -> {
+                    if (!response.statusCode().is2xxSuccessful()) {
+                        return response.createException().flatMapMany(Flux::error);
+                    }
+                    HttpHeaders headers = response.headers().asHttpHeaders();
+                    Flux<DataBuffer> content = response.bodyToFlux(DataBuffer.class);
+                    ReactiveHttpInputMessage message = new ReactiveHttpInputMessage() {
+                        @Override
+                        public HttpHeaders getHeaders() {
+                            return headers;
+                        }
+
+                        @Override
+                        public Flux<DataBuffer> getBody() {
+                            return content;
+                        }
+                    };
+                    return partReader.read(ResolvableType.forClass(PartEvent.class), message, Map.of())
+                            .windowUntil(PartEvent::isLast)
+                            .concatMap(part -> part.switchOnFirst((first, events) -> {
+                                if (!first.hasValue()) {
+                                    return events.thenMany(Flux.<GmailBatchItem<T>>empty());
+                                }
+                                HttpHeaders partHeaders = first.get().headers();
+                                return DataBufferUtils.join(events.map(PartEvent::content), MAX_PART_SIZE)
+                                        .map(buffer -> {
+                                            try {
+                                                return parsePart(partHeaders, buffer, ids, type);
+                                            } finally {
+                                                DataBufferUtils.release(buffer);
+                                            }
+                                        });
+                            }));
+                });
+    }
+
+    /**
+     * A batch part holds a raw HTTP response: status line, headers, blank line, JSON body.
+     */
+    private <T> GmailBatchItem<T> parsePart(HttpHeaders partHeaders, DataBuffer buffer, List<String> ids, Class<T> type) {
+        String id = resolveId(partHeaders.getFirst("Content-ID"), ids);
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+
+        int headerEnd = indexOf(bytes, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        int bodyStart = headerEnd < 0 ? bytes.length : headerEnd + 4;
+        String head = new String(bytes, 0, headerEnd < 0 ? bytes.length : headerEnd, StandardCharsets.UTF_8);
+        int status = parseStatus(head);
+
+        try {
+            if (status >= 200 && status < 300) {
+                T body = objectMapper.readValue(bytes, bodyStart, bytes.length - bodyStart, type);
+                return new GmailBatchItem<>(id, status, body, null);
+            }
+            String error = new String(bytes, bodyStart, bytes.length - bodyStart, StandardCharsets.UTF_8).trim();
+            JsonNode errorJson = error.startsWith("{") ? objectMapper.readTree(error) : null;
+            if (errorJson != null && errorJson.path("error").hasNonNull("message")) {
+                error = errorJson.path("error").path("message").asText();
+            }
+            return new GmailBatchItem<>(id, status, null, error);
+        } catch (Exception e) {
+            return new GmailBatchItem<>(id, status, null, "Failed to parse batch response: " + e.getMessage());
+        }
+    }
+
+    private static String resolveId(String contentId, List<String> ids) {
+        // Gmail answers <item-N> with <response-item-N>
+        if (contentId != null) {
+            int dash = contentId.lastIndexOf('-');
+            int end = contentId.endsWith(">") ? contentId.length() - 1 : contentId.length();
+            try {
+                int index = Integer.parseInt(contentId.substring(dash + 1, end));
+                if (index >= 0 && index < ids.size()) {
+                    return ids.get(index);
+                }
+            } catch (NumberFormatException ignored) {
+                // fall through
+            }
+        }
+        return contentId;
+    }
+
+    private static int parseStatus(String head) {
+        // "HTTP/1.1 200 OK"
+        String[] statusLine = head.split("\r\n", 2)[0].split(" ");
+        try {
+            return statusLine.length > 1 ? Integer.parseInt(statusLine[1]) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.config.GmailPriority;
+import com.example.aimailbox.dto.request.EmailSendRequest;
+import com.example.aimailbox.dto.response.GmailSendResponse;
+import com.example.aimailbox.dto.response.OutboxMessageResponse;
+import com.example.aimailbox.helper.UserHelper;
+import com.example.aimailbox.model.OutboxMessage;
+import com.example.aimailbox.model.OutboxStatus;
+import com.example.aimailbox.model.User;
+import com.example.aimailbox.repository.OutboxMessageRepository;
+import com.example.aimailbox.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Durable queue for outgoing mail. Requests are composed and persisted, then a dispatcher sends
+ * them in the background with a bounded number of sends in flight, retrying transient Gmail
+ * failures with exponential backoff and jitter.
+ * <p>
+ * A failure after the message was uploaded (timeout, dropped connection, 5xx) leaves it unclear
+ * whether Gmail sent it. Such a message is only retried after a search by its Message-ID finds no
+ * sent copy; a message without a Message-ID is failed instead, so recipients never get it twice.
+ */
+@Service
+@Slf4j
+public class OutboxService {
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final UserRepository userRepository;
+    private final ProxyMailService proxyMailService;
+    private final UserHelper userHelper;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final Duration baseBackoff;
+    private final Duration maxBackoff;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean claiming = new AtomicBoolean();
+
+    private static final Duration STALE_CLAIM = Duration.ofMinutes(10);
+
+    public OutboxService(OutboxMessageRepository outboxMessageRepository,
+                         UserRepository userRepository,
+                         ProxyMailService proxyMailService,
+                         UserHelper userHelper,
+                         @Value("${outbox.concurrency:4}") int concurrency,
+                         @Value("${outbox.max-attempts:8}") int maxAttempts,
+                         @Value("${outbox.base-backoff-seconds:5}") long baseBackoffSeconds,
+                         @Value("${outbox.max-backoff-seconds:900}") long maxBackoffSeconds) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.userRepository = userRepository;
+        this.proxyMailService = proxyMailService;
+        this.userHelper = userHelper;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoff = Duration.ofSeconds(baseBackoffSeconds);
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+    }
+
+    public Mono<OutboxMessageResponse> enqueue(EmailSendRequest request) {
+        // Assembled here so the sender checks see the caller's SecurityContext
+        Mono<byte[]> composed = proxyMailService.composeRawMessage(request);
+        return userHelper.getCurrentUser()
+                .zipWith(composed)
+                .publishOn(Schedulers.boundedElastic())
+                .map(userAndRaw -> outboxMessageRepository.save(OutboxMessage.builder()
+                        .userId(userAndRaw.getT1().getId())
+                        .raw(userAndRaw.getT2())
+                        .rfc822MessageId(ProxyMailService.messageIdOf(userAndRaw.getT2()))
+                        .threadId(request.getThreadId())
+                        .nextAttemptAt(Instant.now())
+                        .build()))
+                .doOnNext(saved -> Schedulers.boundedElastic().schedule(this::dispatch))
+                .map(this::toResponse);
+    }
+
+    public Mono<OutboxMessageResponse> getStatus(Long id) {
+        return userHelper.getCurrentUser()
+                .publishOn(Schedulers.boundedElastic())
+                .map(user -> outboxMessageRepository.findByIdAndUserId(id, user.getId())
+                        .orElseThrow(() -> new RuntimeException("Outbox message not found")))
+                .map(this::toResponse);
+    }
+
+    /**
+     * Claims as many due messages as there are free send slots. Also re-run whenever a send finishes,
+     * so a backlog drains at the configured concurrency rather than at the polling rate.
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void dispatch() {
+        if (!claiming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            releaseStaleClaims();
+            int free = concurrency - inFlight.get();
+            if (free <= 0) {
+                return;
+            }
+            String token = UUID.randomUUID().toString();
+            if (outboxMessageRepository.claimDue(token, Instant.now(), free) == 0) {
+                return;
+            }
+            List<OutboxMessage> claimed = outboxMessageRepository.findByClaimToken(token);
+            for (OutboxMessage message : claimed) {
+                inFlight.incrementAndGet();
+                send(message)
+                        .doFinally(signal -> {
+                            inFlight.decrementAndGet();
+                            Schedulers.boundedElastic().schedule(this::dispatch);
+                        })
+                        .subscribe();
+            }
+        } catch (Exception e) {
+            log.error("Outbox dispatch failed", e);
+        } finally {
+            claiming.set(false);
+        }
+    }
+
+    /**
+     * Messages left in SENDING by a crashed dispatcher count as a failed attempt with an unknown
+     * outcome: they go back to the queue after the usual backoff, or fail once out of attempts, and
+     * the next attempt checks for a sent copy first.
+     */
+    private void releaseStaleClaims() {
+        for (OutboxMessage message : outboxMessageRepository.findByStatusAndClaimedAtBefore(
+                OutboxStatus.SENDING, Instant.now().minus(STALE_CLAIM))) {
+            markFailure(message, new IllegalStateException("Send outcome unknown: claim expired"));
+        }
+    }
+
+    private Mono<Void> send(OutboxMessage message) {
+        return Mono.fromCallable(() -> userRepository.findById(message.getUserId())
+                        .orElseThrow(() -> new RuntimeException("User not found")))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(user -> alreadySent(message)
+                        .switchIfEmpty(Mono.defer(() -> proxyMailService.sendRawMessage(message.getRaw(), message.getThreadId())))
+                        .contextWrite(Context.of(Authentication.class, authenticationOf(user),
+                                GmailPriority.class, GmailPriority.BACKGROUND)))
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(response -> markSent(message, response))
+                .then()
+                .onErrorResume(error -> Mono.fromRunnable(() -> markFailure(message, error))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .then());
+    }
+
+    // After an attempt with an unknown outcome: the copy Gmail already sent, if any
+    private Mono<GmailSendResponse> alreadySent(OutboxMessage message) {
+        String messageId = message.getAttempts() > 0 ? rfc822MessageId(message) : null;
+        if (messageId == null) {
+            return Mono.empty();
+        }
+        return proxyMailService.findByRfc822MessageId(messageId)
+                .doOnNext(found -> log.info("Outbox message {} was already sent by an earlier attempt", message.getId()));
+    }
+
+    private void markSent(OutboxMessage message, GmailSendResponse response) {
+        if (outboxMessageRepository.markSent(message.getId(), message.getClaimToken(), response.getId(),
+                response.getThreadId(), Instant.now()) == 0) {
+            log.warn("Outbox message {} was sent as {} after its claim expired", message.getId(), response.getId());
+            return;
+        }
+        log.info("Outbox message {} sent as {}", message.getId(), response.getId());
+    }
+
+    private void markFailure(OutboxMessage message, Throwable error) {
+        String reason = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (reason.length() > 1000) {
+            reason = reason.substring(0, 1000);
+        }
+        int attempt = message.getAttempts() + 1;
+        boolean retryable = isRetryable(error);
+        if (retryable && isAmbiguous(error) && rfc822MessageId(message) == null) {
+            // Nothing to check a retry against
+            retryable = false;
+            reason = "Send outcome unknown, not retried: " + reason;
+        }
+        if (attempt >= maxAttempts || !retryable) {
+            if (outboxMessageRepository.markFailed(message.getId(), message.getClaimToken(), reason) > 0) {
+                log.warn("Outbox message {} failed permanently after {} attempts: {}", message.getId(), attempt, reason);
+            }
+            return;
+        }
+        Instant nextAttemptAt = Instant.now().plus(backoff(attempt));
+        if (outboxMessageRepository.markRetry(message.getId(), message.getClaimToken(), reason, nextAttemptAt) == 0) {
+            log.warn("Outbox message {} lost its claim before its failure was recorded", message.getId());
+            return;
+        }
+        log.info("Outbox message {} attempt {} failed, retrying at {}: {}", message.getId(), attempt, nextAttemptAt, reason);
+    }
+
+    private Duration backoff(int attempt) {
+        long base = baseBackoff.toMillis() << Math.min(attempt - 1, 20);
+        long capped = Math.min(base, maxBackoff.toMillis());
+        // Full jitter keeps a burst of failures from retrying in lockstep
+        return Duration.ofMillis(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof WebClientResponseException response) {
+                int status = response.getStatusCode().value();
+                return status == 408 || status == 429 || status >= 500;
+            }
+        }
+        // Network errors and timeouts
+        return true;
+    }
+
+    // Failures after which Gmail may have sent the message anyway
+    private static boolean isAmbiguous(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof WebClientResponseException response) {
+                int status = response.getStatusCode().value();
+                // 429 and other 4xx are rejected before sending
+                return status >= 500;
+            }
+        }
+        return true;
+    }
+
+    // Messages queued before the column existed carry the header only in their raw bytes
+    private static String rfc822MessageId(OutboxMessage message) {
+        if (message.getRfc822MessageId() != null || message.getRaw() == null) {
+            return message.getRfc822MessageId();
+        }
+        return ProxyMailService.messageIdOf(message.getRaw());
+    }
+
+    private static Authentication authenticationOf(User user) {
+        return new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList());
+    }
+
+    private OutboxMessageResponse toResponse(OutboxMessage message) {
+        return OutboxMessageResponse.builder()
+                .id(message.getId())
+                .status(message.getStatus())
+                .attempts(message.getAttempts())
+                .nextAttemptAt(message.getStatus() == OutboxStatus.PENDING ? message.getNextAttemptAt() : null)
+                .lastError(message.getLastError())
+                .gmailMessageId(message.getGmailMessageId())
+                .threadId(message.getGmailThreadId() != null ? message.getGmailThreadId() : message.getThreadId())
+                .createdAt(message.getCreatedAt())
+                .sentAt(message.getSentAt())
+                .build();
+    }
+}
@@ -1,18 +1,27 @@
 package com.example.aimailbox.service;
 
+import com.example.aimailbox.config.GmailPriority;
 import com.example.aimailbox.dto.request.EmailSendRequest;
 import com.example.aimailbox.dto.request.LabelCreationRequest;
 import com.example.aimailbox.dto.request.LabelUpdateRequest;
 import com.example.aimailbox.dto.request.ModifyEmailRequest;
+import com.example.aimailbox.dto.request.ThreadBodies;
 import com.example.aimailbox.dto.response.*;
 import com.example.aimailbox.dto.response.mail.*;
 import com.example.aimailbox.dto.response.mail.Thread;
+import com.example.aimailbox.helper.AttachmentDataDecoder;
+import com.example.aimailbox.helper.GmailMessageParser;
+import com.example.aimailbox.helper.IncrementalJsonReader;
+import com.example.aimailbox.helper.MultipartFileDataSource;
 import com.example.aimailbox.helper.UserHelper;
 import com.example.aimailbox.model.KanbanColumn;
 import com.example.aimailbox.model.User;
 import com.example.aimailbox.repository.EmailRepository;
 import com.example.aimailbox.repository.KanbanColumnRepository;
 import com.example.aimailbox.wrapper.LabelWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Session;
 import jakarta.mail.internet.*;
@@ -21,23 +30,28 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -50,25 +64,76 @@ import org.springframework.beans.factory.annotation.Value;
 @Slf4j
 public class ProxyMailService {
     final WebClient gmailWebClient;
+    final GmailBatchClient gmailBatchClient;
     final OAuthTokenService oAuthTokenService;
     final WebClient googleGenerativeClient;
     final KanbanColumnRepository kanbanColumnRepository;
     final UserHelper userHelper;
     final EmailRepository emailRepository;
+    final ThreadDetailCache threadDetailCache;
+    final ThreadListCache threadListCache;
+    final SnoozeIndex snoozeIndex;
+    final SingleFlight singleFlight;
+    final ObjectMapper objectMapper;
     @Value("${google.generative-api-key:}")
     String googleGenerativeApiKey;
 
+    // Label catalogue per user, written through by label CRUD; the TTL picks up edits made in other clients
+    final Cache<Long, List<LabelResponse>> labelCache = Caffeine.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS)
+            .maximumSize(10_000)
+            .build();
+    final Cache<String, LabelDetailResponse> labelDetailCache = Caffeine.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS)
+            .maximumSize(100_000)
+            .build();
+    // Message bodies never change for a given message id, so they only leave by size or age
+    final Cache<String, MessageBodyResponse> messageBodyCache = Caffeine.newBuilder()
+            .maximumWeight(32L * 1024 * 1024)
+            .weigher((String key, MessageBodyResponse body) -> 128
+                    + (body.getTextBody() != null ? body.getTextBody().length() : 0)
+                    + (body.getHtmlBody() != null ? body.getHtmlBody().length() : 0))
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
     public Mono<List<LabelResponse>> getAllLabels() {
+        return forCurrentUser(this::fetchAllLabels, userId -> {
+            List<LabelResponse> cached = labelCache.getIfPresent(userId);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return singleFlight.execute(userId + ":GET:/labels", this::fetchAllLabels)
+                    .doOnNext(labels -> labelCache.put(userId, labels));
+        });
+    }
+
+    private Mono<List<LabelResponse>> fetchAllLabels() {
         return gmailWebClient.get()
                 .uri("/labels")
                 .retrieve()
                 .bodyToMono(LabelWrapper.class)
                 .map(LabelWrapper::getLabels)
+                .map(List::copyOf)
                 .defaultIfEmpty(List.of())
                 .onErrorMap(e -> new RuntimeException("Failed to fetch labels", e));
     }
 
     public Mono<LabelDetailResponse> getLabel(String id) {
+        return forCurrentUser(() -> fetchLabel(id), userId -> {
+            LabelDetailResponse cached = labelDetailCache.getIfPresent(labelKey(userId, id));
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return singleFlight.execute(userId + ":GET:/labels/" + id, () -> fetchLabel(id))
+                    .doOnNext(label -> {
+                        if (label.getId() != null) {
+                            labelDetailCache.put(labelKey(userId, id), label);
+                        }
+                    });
+        });
+    }
+
+    private Mono<LabelDetailResponse> fetchLabel(String id) {
         return gmailWebClient.get()
                 .uri("/labels/{id}", id)
                 .retrieve()
@@ -88,6 +153,7 @@ public class ProxyMailService {
                  .bodyValue(request)
                  .retrieve()
                  .bodyToMono(LabelDetailResponse.class)
+                .doOnNext(label -> writeThroughLabel(user.getId(), label))
                 .onErrorMap(e -> new RuntimeException("Failed to create label", e));
     }
     public Mono<LabelDetailResponse> updateLabel(LabelUpdateRequest request, String id) {
@@ -99,6 +165,9 @@ public class ProxyMailService {
                 .bodyValue(request)
                 .retrieve()
                 .bodyToMono(LabelDetailResponse.class)
+                .flatMap(label -> currentUserId()
+                        .doOnNext(userId -> writeThroughLabel(userId, label))
+                        .thenReturn(label))
                 .onErrorMap(e -> new RuntimeException("Failed to update label", e));
     }
 
@@ -107,36 +176,232 @@ public class ProxyMailService {
                 .uri("/labels/{id}", id)
                  .retrieve()
                  .bodyToMono(Void.class)
+                .then(currentUserId()
+                        .doOnNext(userId -> {
+                            labelDetailCache.invalidate(labelKey(userId, id));
+                            labelCache.asMap().computeIfPresent(userId, (key, labels) -> labels.stream()
+                                    .filter(label -> !id.equals(label.getId()))
+                                    .toList());
+                        })
+                        .then())
                 .onErrorMap(e -> new RuntimeException("Failed to delete label", e));
     }
+
+    private void writeThroughLabel(Long userId, LabelDetailResponse label) {
+        if (label == null || label.getId() == null) {
+            return;
+        }
+        labelDetailCache.put(labelKey(userId, label.getId()), label);
+        LabelResponse summary = new LabelResponse(label.getId(), label.getName(), label.getType());
+        labelCache.asMap().computeIfPresent(userId, (key, labels) -> {
+            List<LabelResponse> updated = new ArrayList<>(labels.size() + 1);
+            boolean replaced = false;
+            for (LabelResponse existing : labels) {
+                if (label.getId().equals(existing.getId())) {
+                    updated.add(summary);
+                    replaced = true;
+                } else {
+                    updated.add(existing);
+                }
+            }
+            if (!replaced) {
+                updated.add(summary);
+            }
+            return List.copyOf(updated);
+        });
+    }
+
+    private static String labelKey(Long userId, String labelId) {
+        return userId + ":" + labelId;
+    }
+    /**
+     * Listing without snoozed threads. Filtering uses the in-memory {@link SnoozeIndex}; when it
+     * removes rows, further Gmail pages are fetched so the page still holds {@code maxResults}
+     * threads, and the returned page token continues after the last page consumed.
+     */
     public Mono<ListThreadResponse> getListThreadsWithSnoozeFilter(
             Integer maxResults, String pageToken, String query, String labelId, Boolean includeSpamTrash) {
+        int target = maxResults != null ? maxResults : DEFAULT_PAGE_SIZE;
+        return getCachedListThreads(maxResults, pageToken, query, labelId, includeSpamTrash)
+                .flatMap(response -> currentUserId()
+                        .flatMap(userId -> snoozeIndex.isLoaded(userId)
+                                ? Mono.just(userId)
+                                : Mono.fromRunnable(() -> snoozeIndex.load(userId))
+                                        .subscribeOn(Schedulers.boundedElastic())
+                                        .thenReturn(userId))
+                        .flatMap(userId -> fillPage(userId, response, response, new ArrayList<>(), target, 0,
+                                query, labelId, includeSpamTrash))
+                        .defaultIfEmpty(response));
+    }
+
+    private Mono<ListThreadResponse> fillPage(Long userId, ListThreadResponse response, ListThreadResponse page,
+            List<Thread> kept, int target, int round, String query, String labelId, Boolean includeSpamTrash) {
+        if (page.getThreads() != null) {
+            for (Thread thread : page.getThreads()) {
+                if (!snoozeIndex.isSnoozed(userId, thread.getId())) {
+                    kept.add(thread);
+                }
+            }
+        }
+        String next = page.getNextPageToken();
+        int remaining = target - kept.size();
+        if (remaining <= 0 || next == null || next.isEmpty() || round >= MAX_BACKFILL_ROUNDS) {
+            response.setThreads(kept);
+            response.setNextPageToken(next);
+            return Mono.just(response);
+        }
+        // Ask only for the shortfall so nothing fetched has to be dropped behind the page token
+        return getListThreads(remaining, next, query, labelId, includeSpamTrash)
+                .flatMap(more -> fillPage(userId, response, more, kept, target, round + 1,
+                        query, labelId, includeSpamTrash));
+    }
 
-        return getListThreads(maxResults, pageToken, query, labelId, includeSpamTrash)
+    /**
+     * Listing with ready-to-render rows: each thread is hydrated with format=metadata, only the
+     * From/To/Subject/Date headers and a fields mask, through the batch endpoint.
+     */
+    public Mono<ListThreadResponse> getListThreadsWithMetadata(
+            Integer maxResults, String pageToken, String query, String labelId, Boolean includeSpamTrash) {
+        return getListThreadsWithSnoozeFilter(maxResults, pageToken, query, labelId, includeSpamTrash)
                 .flatMap(response -> {
                     if (response.getThreads() == null || response.getThreads().isEmpty()) {
+                        response.setItems(List.of());
                         return Mono.just(response);
                     }
-                    List<String> apiThreadIds = response.getThreads().stream()
+                    List<String> threadIds = response.getThreads().stream()
                             .map(Thread::getId)
                             .toList();
-                    return Mono.fromCallable(() ->
-                                    emailRepository.findSnoozedThreadIds(apiThreadIds, Instant.now())
-                            )
-                            .subscribeOn(Schedulers.boundedElastic())
-                            .map(snoozedThreadIds -> {
-                                List<Thread> filteredThreads = response.getThreads().stream()
-                                        .filter(thread -> !snoozedThreadIds.contains(thread.getId()))
-                                        .collect(Collectors.toList());
-
-                                response.setThreads(filteredThreads);
+                    return gmailBatchClient.get(threadIds, THREAD_METADATA_PATH, ThreadDetail.class)
+                            .filter(GmailBatchItem::isSuccess)
+                            .collectMap(GmailBatchItem::getId, GmailBatchItem::getBody)
+                            .map(details -> {
+                                response.setItems(response.getThreads().stream()
+                                        .map(thread -> toThreadSummary(thread, details.get(thread.getId())))
+                                        .toList());
                                 return response;
                             });
                 });
     }
 
+    // Gmail's page size when maxResults is omitted
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_BACKFILL_ROUNDS = 5;
+    private static final String THREAD_METADATA_PATH = "/threads/{id}?format=metadata"
+            + "&metadataHeaders=From&metadataHeaders=To&metadataHeaders=Subject&metadataHeaders=Date"
+            + "&fields=id,historyId,messages(id,labelIds,internalDate,payload/headers)";
+
+    private ThreadSummaryResponse toThreadSummary(Thread thread, ThreadDetail detail) {
+        ThreadSummaryResponse summary = ThreadSummaryResponse.builder()
+                .id(thread.getId())
+                .historyId(thread.getHistoryId())
+                .snippet(thread.getSnippet())
+                .build();
+        if (detail == null || detail.getMessages() == null || detail.getMessages().isEmpty()) {
+            return summary;
+        }
+        Message first = detail.getMessages().get(0);
+        Message last = detail.getMessages().get(detail.getMessages().size() - 1);
+        List<MessagePartHeader> firstHeaders = first.getPayload() != null ? first.getPayload().getHeaders() : null;
+        List<MessagePartHeader> lastHeaders = last.getPayload() != null ? last.getPayload().getHeaders() : null;
+
+        Set<String> labelIds = new LinkedHashSet<>();
+        for (Message message : detail.getMessages()) {
+            if (message.getLabelIds() != null) {
+                labelIds.addAll(message.getLabelIds());
+            }
+        }
+        summary.setSubject(getHeader(firstHeaders, "Subject"));
+        summary.setFrom(getHeader(lastHeaders, "From"));
+        summary.setTo(getHeader(lastHeaders, "To"));
+        summary.setDate(GmailMessageParser.messageDate(last.getInternalDate(), getHeader(lastHeaders, "Date")));
+        summary.setMessageCount(detail.getMessages().size());
+        summary.setUnread(labelIds.contains("UNREAD"));
+        summary.setLabelIds(new ArrayList<>(labelIds));
+        if (detail.getHistoryId() != null) {
+            summary.setHistoryId(detail.getHistoryId());
+        }
+        return summary;
+    }
+
     public Mono<ListThreadResponse> getListThreads(Integer maxResults, String pageToken, String query, String labelId,
             Boolean includeSpamTrash) {
+        String requestKey = "GET:/threads?maxResults=" + maxResults + "&pageToken=" + pageToken + "&q=" + query
+                + "&labelIds=" + labelId + "&includeSpamTrash=" + includeSpamTrash;
+        return forCurrentUser(() -> fetchListThreads(maxResults, pageToken, query, labelId, includeSpamTrash),
+                userId -> singleFlight.execute(userId + ":" + requestKey,
+                                () -> fetchListThreads(maxResults, pageToken, query, labelId, includeSpamTrash))
+                        .doOnNext(response -> {
+                            if (response.getThreads() != null) {
+                                response.getThreads().forEach(thread ->
+                                        threadDetailCache.observeHistoryId(userId, thread.getId(), thread.getHistoryId()));
+                            }
+                        })
+                        // Callers filter and decorate the response, so coalesced callers each get their own copy
+                        .map(ThreadListCache::copy));
+    }
+
+    /**
+     * Listing for the UI, served from the thread list cache: fresh pages directly, stale pages
+     * immediately while a background refresh runs, and the next page is prefetched after each
+     * response. Background work runs in the background quota lane.
+     */
+    public Mono<ListThreadResponse> getCachedListThreads(Integer maxResults, String pageToken, String query,
+            String labelId, Boolean includeSpamTrash) {
+        return currentAuthentication()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(caller -> {
+                    if (caller.isEmpty()) {
+                        // No user to key the cache by
+                        return getListThreads(maxResults, pageToken, query, labelId, includeSpamTrash);
+                    }
+                    Authentication auth = caller.get();
+                    Long userId = ((User) auth.getPrincipal()).getId();
+                    String key = ThreadListCache.key(userId, maxResults, pageToken, query, labelId, includeSpamTrash);
+                    ThreadListCache.Page page = threadListCache.get(key);
+                    Mono<ListThreadResponse> response;
+                    if (page == null) {
+                        response = getListThreads(maxResults, pageToken, query, labelId, includeSpamTrash)
+                                .doOnNext(fetched -> threadListCache.put(key, fetched));
+                    } else {
+                        if (!threadListCache.isFresh(page)) {
+                            refreshInBackground(auth, key, maxResults, pageToken, query, labelId, includeSpamTrash);
+                        }
+                        response = Mono.just(ThreadListCache.copy(page.response()));
+                    }
+                    return response.doOnNext(served -> {
+                        String next = served.getNextPageToken();
+                        if (next != null && !next.isEmpty()) {
+                            String nextKey = ThreadListCache.key(userId, maxResults, next, query, labelId, includeSpamTrash);
+                            if (threadListCache.needsFetch(nextKey)) {
+                                threadListCache.recordPrefetch();
+                                refreshInBackground(auth, nextKey, maxResults, next, query, labelId, includeSpamTrash);
+                            }
+                        }
+                    });
+                });
+    }
+
+    private void refreshInBackground(Authentication auth, String key, Integer maxResults, String pageToken, String query,
+            String labelId, Boolean includeSpamTrash) {
+        getListThreads(maxResults, pageToken, query, labelId, includeSpamTrash)
+                .doOnNext(fetched -> threadListCache.put(key, fetched))
+                .contextWrite(Context.of(Authentication.class, auth, GmailPriority.class, GmailPriority.BACKGROUND))
+                .subscribe(
+                        fetched -> { },
+                        // The last good page stays in the cache until it ages out
+                        error -> log.warn("Background refresh of thread list failed: {}", error.getMessage()));
+    }
+
+    private Mono<Authentication> currentAuthentication() {
+        return Mono.deferContextual(ctx -> ctx.hasKey(Authentication.class)
+                        ? Mono.just(ctx.<Authentication>get(Authentication.class))
+                        : Mono.justOrEmpty(SecurityContextHolder.getContext().getAuthentication()))
+                .filter(auth -> auth.getPrincipal() instanceof User);
+    }
+
+    private Mono<ListThreadResponse> fetchListThreads(Integer maxResults, String pageToken, String query, String labelId,
+            Boolean includeSpamTrash) {
         return gmailWebClient.get()
                 .uri(uriBuilder -> {
                     uriBuilder.path("/threads");
@@ -161,17 +426,245 @@ public class ProxyMailService {
                 .onErrorMap(e -> new RuntimeException("Failed to fetch messages", e));
     }
 
+    /**
+     * Thread detail from the thread detail cache; each caller gets its own copy of the cached thread.
+     */
     public Mono<ThreadDetailResponse> getThreadDetail(String id) {
+        return forCurrentUser(() -> fetchThreadDetail(id), userId -> {
+            ThreadDetailResponse cached = threadDetailCache.get(userId, id);
+            if (cached != null) {
+                return Mono.just(ThreadDetailCache.copy(cached));
+            }
+            return singleFlight.execute(userId + ":GET:/threads/" + id + "?format=full", () -> fetchThreadDetail(id))
+                    .doOnNext(detail -> threadDetailCache.put(userId, detail))
+                    .map(ThreadDetailCache::copy);
+        });
+    }
+
+    /**
+     * Thread detail with only the requested bodies; the cached thread is copied, never trimmed in place.
+     */
+    public Mono<ThreadDetailResponse> getThreadDetail(String id, ThreadBodies bodies) {
+        if (bodies == ThreadBodies.ALL) {
+            return getThreadDetail(id);
+        }
+        return getThreadDetail(id).map(detail -> {
+            List<MessageDetailResponse> messages = detail.getMessages() != null ? detail.getMessages() : List.of();
+            List<MessageDetailResponse> trimmed = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                boolean keep = bodies == ThreadBodies.LAST && i == messages.size() - 1;
+                trimmed.add(keep ? messages.get(i) : messages.get(i).withoutBodies());
+            }
+            return detail.toBuilder().messages(trimmed).build();
+        });
+    }
+
+    /**
+     * Bodies of a single message, e.g. when a collapsed message is expanded. Served from the cached
+     * thread when the caller names it, otherwise fetched once and kept in the message body cache.
+     */
+    public Mono<MessageBodyResponse> getMessageBody(String messageId, String threadId) {
+        return forCurrentUser(() -> fetchMessageBody(messageId), userId -> {
+            if (threadId != null) {
+                ThreadDetailResponse thread = threadDetailCache.get(userId, threadId);
+                if (thread != null && thread.getMessages() != null) {
+                    Optional<MessageDetailResponse> message = thread.getMessages().stream()
+                            .filter(m -> messageId.equals(m.getId()))
+                            .findFirst();
+                    if (message.isPresent()) {
+                        return Mono.just(toMessageBody(message.get()));
+                    }
+                }
+            }
+            String key = userId + ":" + messageId;
+            MessageBodyResponse cached = messageBodyCache.getIfPresent(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return singleFlight.execute(userId + ":GET:/messages/" + messageId + "/body", () -> fetchMessageBody(messageId))
+                    .doOnNext(body -> messageBodyCache.put(key, body));
+        });
+    }
+
+    private Mono<MessageBodyResponse> fetchMessageBody(String messageId) {
+        return gmailWebClient.get()
+                .uri("/messages/{id}?format=full&fields=id,threadId,payload(mimeType,body/data,parts)", messageId)
+                .retrieve()
+                .bodyToMono(Message.class)
+                .map(GmailMessageParser::parseMessage)
+                .map(this::toMessageBody)
+                .onErrorMap(e -> new RuntimeException("Failed to fetch message body", e));
+    }
+
+    private MessageBodyResponse toMessageBody(MessageDetailResponse message) {
+        return MessageBodyResponse.builder()
+                .id(message.getId())
+                .threadId(message.getThreadId())
+                .textBody(message.getTextBody())
+                .htmlBody(message.getHtmlBody())
+                .build();
+    }
+
+    private Mono<ThreadDetailResponse> fetchThreadDetail(String id) {
         return gmailWebClient.get()
                 .uri(uriBuilder -> uriBuilder.path("/threads/{id}")
                         .queryParam("format", "full")
                         .build(id))
                 .retrieve()
                 .bodyToMono(ThreadDetail.class)
-                .map(fullThread -> this.parseListMessage(fullThread))
+                .map(GmailMessageParser::parseThread)
                 .onErrorMap(e -> new RuntimeException("Failed to fetch thread details", e));
     }
 
+    /**
+     * Emits the messages of a thread newest first. The newest message is fetched on its own as soon
+     * as a minimal {@code threads.get} has named it, while the full thread is read in parallel from
+     * the raw byte stream for the rest, so time-to-first-message does not depend on the length of
+     * the thread and the quota cost stays at three calls. A cached thread is replayed directly.
+     */
+    public Flux<MessageDetailResponse> streamThreadMessages(String id) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        Flux<MessageDetailResponse> messages = currentUserId()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(userId -> {
+                    ThreadDetailResponse cached = userId.map(user -> threadDetailCache.get(user, id)).orElse(null);
+                    return cached != null
+                            ? Flux.fromIterable(reversed(cached.getMessages()))
+                            : fetchThreadMessages(id);
+                });
+        return auth != null ? messages.contextWrite(ctx -> ctx.put(Authentication.class, auth)) : messages;
+    }
+
+    private Flux<MessageDetailResponse> fetchThreadMessages(String id) {
+        Mono<String> newestId = gmailWebClient.get()
+                .uri("/threads/{id}?format=minimal&fields=messages(id)", id)
+                .retrieve()
+                .bodyToMono(ThreadDetail.class)
+                .flatMap(thread -> thread.getMessages() == null || thread.getMessages().isEmpty()
+                        ? Mono.empty()
+                        : Mono.just(thread.getMessages().get(thread.getMessages().size() - 1).getId()))
+                .cache();
+        Mono<MessageDetailResponse> newest = newestId.flatMap(messageId -> gmailWebClient.get()
+                .uri("/messages/{id}?format=full", messageId)
+                .retrieve()
+                .bodyToMono(Message.class)
+                .map(GmailMessageParser::parseMessage));
+        // Parsed one message at a time, so the codec size limit never applies to the whole thread
+        Flux<MessageDetailResponse> older = IncrementalJsonReader.readArrayElements(
+                        gmailWebClient.get()
+                                .uri("/threads/{id}?format=full", id)
+                                .retrieve()
+                                .bodyToFlux(DataBuffer.class),
+                        objectMapper, "messages", Message.class)
+                .collectList()
+                .zipWith(newestId)
+                .flatMapIterable(messagesAndNewest -> reversed(messagesAndNewest.getT1().stream()
+                        .filter(message -> !message.getId().equals(messagesAndNewest.getT2()))
+                        .map(GmailMessageParser::parseMessage)
+                        .toList()));
+        // Both sources start at once; the newest message is emitted as soon as it arrives
+        return Flux.mergeSequential(newest.flux(), older)
+                .onErrorMap(e -> new RuntimeException("Failed to stream thread messages", e));
+    }
+
+    private static <T> List<T> reversed(List<T> items) {
+        List<T> copy = new ArrayList<>(items != null ? items : List.of());
+        Collections.reverse(copy);
+        return copy;
+    }
+
+    /**
+     * Hydrates many threads through the Gmail batch endpoint, 50 per round trip.
+     * Threads that could not be fetched are emitted with their status and error instead of a body.
+     */
+    public Flux<GmailBatchItem<ThreadDetailResponse>> getThreadDetails(List<String> threadIds) {
+        return currentUserId()
+                .defaultIfEmpty(-1L)
+                .flatMapMany(userId -> gmailBatchClient.get(threadIds, "/threads/{id}?format=full", ThreadDetail.class)
+                        .map(item -> item.map(GmailMessageParser::parseThread))
+                        .doOnNext(item -> {
+                            if (item.isSuccess()) {
+                                threadDetailCache.observeHistoryId(userId, item.getId(), item.getBody().getHistoryId());
+                            }
+                        }));
+    }
+
+    /**
+     * Current labels of many threads, as the union over their messages, read through the batch
+     * endpoint with only the message label ids requested.
+     */
+    public Flux<GmailBatchItem<Set<String>>> getThreadLabels(List<String> threadIds) {
+        return gmailBatchClient.get(threadIds, "/threads/{id}?format=minimal&fields=id,messages(labelIds)", ThreadDetail.class)
+                .map(item -> item.map(thread -> {
+                    Set<String> labelIds = new LinkedHashSet<>();
+                    if (thread.getMessages() != null) {
+                        for (Message message : thread.getMessages()) {
+                            if (message.getLabelIds() != null) {
+                                labelIds.addAll(message.getLabelIds());
+                            }
+                        }
+                    }
+                    return labelIds;
+                }));
+    }
+
+    /**
+     * Runs {@code cached} for the current user, or {@code uncached} when there is none. Choosing the
+     * path up front keeps an empty result from the cached path from triggering a second, uncached fetch.
+     */
+    private <T> Mono<T> forCurrentUser(Supplier<Mono<T>> uncached, Function<Long, Mono<T>> cached) {
+        return currentUserId()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(userId -> userId.isPresent() ? cached.apply(userId.get()) : uncached.get());
+    }
+
+    private Mono<Long> currentUserId() {
+        return userHelper.getContextUser()
+                .map(User::getId)
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    public Mono<GmailProfileResponse> getProfile() {
+        return gmailWebClient.get()
+                .uri("/profile")
+                .retrieve()
+                .bodyToMono(GmailProfileResponse.class)
+                .onErrorMap(e -> new RuntimeException("Failed to fetch mailbox profile", e));
+    }
+
+    public Mono<ListHistoryResponse> getListHistory(String startHistoryId, String pageToken) {
+        return gmailWebClient.get()
+                .uri(uriBuilder -> {
+                    uriBuilder.path("/history")
+                            .queryParam("startHistoryId", startHistoryId)
+                            .queryParam("maxResults", 500)
+                            .queryParam("historyTypes", "messageAdded", "messageDeleted", "labelAdded", "labelRemoved");
+                    if (pageToken != null && !pageToken.isEmpty()) {
+                        uriBuilder.queryParam("pageToken", pageToken);
+                    }
+                    return uriBuilder.build();
+                })
+                .retrieve()
+                .bodyToMono(ListHistoryResponse.class)
+                .defaultIfEmpty(new ListHistoryResponse())
+                .onErrorMap(e -> new RuntimeException("Failed to fetch mailbox history", e));
+    }
+
+    /**
+     * True when the error (or one of its causes) is a Gmail 404, e.g. a deleted thread
+     * or a history checkpoint that is too old to be replayed.
+     */
+    public static boolean isNotFound(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof WebClientResponseException ex && ex.getStatusCode().value() == 404) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Mono<AttachmentResponse> getAttachment(String messageId, String attachmentId) {
         return gmailWebClient.get()
                 .uri("/messages/{messageId}/attachments/{attachmentId}", messageId, attachmentId)
@@ -180,51 +673,149 @@ public class ProxyMailService {
                 .onErrorMap(e -> new RuntimeException("Failed to fetch attachment", e));
     }
 
-    public byte[] getAttachmentBytes(String messageId, String attachmentId) {
-        try {
-            AttachmentResponse attachmentResponse = getAttachment(messageId, attachmentId).block();
-
-            if (attachmentResponse == null) {
-                throw new RuntimeException("Attachment response is null");
-            }
-
-            if (attachmentResponse.getData() == null || attachmentResponse.getData().isEmpty()) {
-                throw new RuntimeException("Attachment data is null or empty");
-            }
-            byte[] decodedData = Base64.getUrlDecoder().decode(attachmentResponse.getData());
-
-            return decodedData;
-        } catch (IllegalArgumentException e) {
-            throw new RuntimeException("Invalid base64 data in attachment", e);
-        } catch (Exception e) {
-            log.error("Failed to download attachment", e);
-            throw new RuntimeException("Failed to download attachment: " + e.getMessage(), e);
-        }
+    /**
+     * Decoded size of the attachment, fetched with a fields mask so the data itself is not downloaded.
+     */
+    public Mono<Long> getAttachmentSize(String messageId, String attachmentId) {
+        return gmailWebClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/messages/{messageId}/attachments/{attachmentId}")
+                        .queryParam("fields", "size")
+                        .build(messageId, attachmentId))
+                .retrieve()
+                .bodyToMono(AttachmentResponse.class)
+                .map(attachment -> attachment.getSize() != null ? attachment.getSize() : 0L)
+                .onErrorMap(e -> new RuntimeException("Failed to fetch attachment", e));
     }
 
-    public Mono<Flux<DataBuffer>> streamAttachment(String messageId, String attachmentId) {
-        return getAttachment(messageId, attachmentId)
-                .map(attachmentResponse -> {
-                    byte[] decodedData = Base64.getUrlDecoder().decode(attachmentResponse.getData());
-                    DataBufferFactory bufferFactory = new DefaultDataBufferFactory();
-                    int chunkSize = 8192;
-
-                    return Flux.range(0, (decodedData.length + chunkSize - 1) / chunkSize)
-                            .map(chunkIndex -> {
-                                int start = chunkIndex * chunkSize;
-                                int end = Math.min(start + chunkSize, decodedData.length);
-                                int length = end - start;
+    public Flux<DataBuffer> streamAttachment(String messageId, String attachmentId) {
+        return streamAttachment(messageId, attachmentId, 0, Long.MAX_VALUE);
+    }
 
-                                DataBuffer buffer = bufferFactory.allocateBuffer(length);
-                                buffer.write(decodedData, start, length);
-                                return buffer;
+    /**
+     * Streams the decoded bytes [start, end] of an attachment. The base64url data field is decoded
+     * chunk by chunk as Gmail's response arrives, so heap use does not grow with the attachment size.
+     * Gmail has no range support, so bytes before {@code start} are downloaded and skipped, and the
+     * download is cancelled once {@code end} has been reached.
+     */
+    public Flux<DataBuffer> streamAttachment(String messageId, String attachmentId, long start, long end) {
+        DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+        return Flux.defer(() -> {
+                    AttachmentDataDecoder decoder = new AttachmentDataDecoder();
+                    long[] position = {0};
+                    return gmailWebClient.get()
+                            .uri("/messages/{messageId}/attachments/{attachmentId}", messageId, attachmentId)
+                            .retrieve()
+                            .bodyToFlux(DataBuffer.class)
+                            .concatMapIterable(buffer -> {
+                                byte[] chunk = new byte[buffer.readableByteCount()];
+                                buffer.read(chunk);
+                                DataBufferUtils.release(buffer);
+                                byte[] decoded = decoder.decode(chunk, 0, chunk.length);
+
+                                long chunkStart = position[0];
+                                position[0] += decoded.length;
+                                int from = (int) Math.max(0, Math.min(decoded.length, start - chunkStart));
+                                // end may be Long.MAX_VALUE, so add the 1 after clamping
+                                int to = (int) Math.max(0, Math.min(decoded.length - 1L, end - chunkStart) + 1);
+                                if (to <= from) {
+                                    return List.<DataBuffer>of();
+                                }
+                                return List.of(bufferFactory.wrap(Arrays.copyOfRange(decoded, from, to)));
                             })
-                            .subscribeOn(Schedulers.boundedElastic());
+                            .takeUntil(buffer -> position[0] > end || decoder.isComplete());
                 })
                 .onErrorMap(e -> new RuntimeException("Failed to stream attachment", e));
     }
 
     public Mono<GmailSendResponse> sendEmail(EmailSendRequest request) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return checkSender(request, auth)
+                .flatMap(currentUser -> Mono.fromCallable(() -> createMimeMessage(request))
+                        .flatMap(email -> sendToGmailApi(email, request.getThreadId()))
+                        .doOnNext(response -> invalidateAfterSend(currentUser.getId(), request.getThreadId(), response))
+                        .contextWrite(ctx -> ctx.put(Authentication.class, auth))
+                        .onErrorMap(e -> {
+                            if (e.getMessage() != null && e.getMessage().contains("401")) {
+                                log.error("Gmail API returned 401 Unauthorized for user {}", currentUser.getEmail());
+                                return new RuntimeException("Gmail authentication failed. Please logout and login again with Google.");
+                            }
+                            return e;
+                        }));
+    }
+
+    /**
+     * Builds the RFC 822 message for a send request without sending it, e.g. to persist it in the outbox.
+     */
+    public Mono<byte[]> composeRawMessage(EmailSendRequest request) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return checkSender(request, auth)
+                .flatMap(currentUser -> Mono.fromCallable(() -> {
+                            MimeMessage email = createMimeMessage(request);
+                            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                            email.writeTo(buffer);
+                            return buffer.toByteArray();
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .onErrorMap(MessagingException.class, e -> new RuntimeException("Failed to create email payload", e));
+    }
+
+    /**
+     * Sends an already composed RFC 822 message; the caller supplies the Authentication in the Reactor context.
+     */
+    public Mono<GmailSendResponse> sendRawMessage(byte[] raw, String threadId) {
+        return uploadMessage(raw.length, out -> out.write(raw), threadId)
+                .flatMap(response -> currentUserId()
+                        .doOnNext(userId -> invalidateAfterSend(userId, threadId, response))
+                        .thenReturn(response));
+    }
+
+    // A sent message joins a thread and the SENT listing, like a modify does
+    private void invalidateAfterSend(Long userId, String requestThreadId, GmailSendResponse response) {
+        if (requestThreadId != null) {
+            threadDetailCache.invalidate(userId, requestThreadId);
+        }
+        if (response.getThreadId() != null && !response.getThreadId().equals(requestThreadId)) {
+            threadDetailCache.invalidate(userId, response.getThreadId());
+        }
+        threadListCache.invalidateUser(userId);
+    }
+
+    /**
+     * The Message-ID header of a composed message, or null when it has none.
+     */
+    public static String messageIdOf(byte[] raw) {
+        try {
+            return new MimeMessage((Session) null, new ByteArrayInputStream(raw)).getMessageID();
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The mailbox's message carrying the given RFC 822 Message-ID, including sent, spam and trash;
+     * empty when there is none. Lets a sender whose earlier attempt had an unknown outcome check
+     * whether Gmail already sent it.
+     */
+    public Mono<GmailSendResponse> findByRfc822MessageId(String messageId) {
+        String bare = messageId.replaceAll("^<|>$", "");
+        return gmailWebClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/messages")
+                        .queryParam("q", "rfc822msgid:" + bare)
+                        .queryParam("includeSpamTrash", true)
+                        .queryParam("maxResults", 1)
+                        .build())
+                .retrieve()
+                .bodyToMono(ListMessageResponse.class)
+                .flatMap(response -> response.getMessages() == null || response.getMessages().isEmpty()
+                        ? Mono.empty()
+                        : Mono.just(GmailSendResponse.builder()
+                                .id(response.getMessages().get(0).getId())
+                                .threadId(response.getMessages().get(0).getThreadId())
+                                .build()))
+                .onErrorMap(e -> new RuntimeException("Failed to look up sent message", e));
+    }
+
+    private Mono<User> checkSender(EmailSendRequest request, Authentication auth) {
         boolean hasRecipients = (request.getTo() != null && !request.getTo().isEmpty()) ||
                 (request.getCc() != null && !request.getCc().isEmpty()) ||
                 (request.getBcc() != null && !request.getBcc().isEmpty());
@@ -234,7 +825,6 @@ public class ProxyMailService {
                     .error(new IllegalArgumentException("At least one recipient (To, Cc, or Bcc) must be specified"));
         }
 
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null || !(auth.getPrincipal() instanceof User)) {
             log.error("No authenticated user found in SecurityContext");
             return Mono.error(new RuntimeException("You must be logged in to send emails"));
@@ -251,17 +841,7 @@ public class ProxyMailService {
             String replySubject = subject.startsWith("Re:") ? subject : "Re: " + subject;
             request.setSubject(replySubject);
         }
-        
-        return Mono.fromCallable(() -> createMimeMessage(request))
-                .flatMap(email -> sendToGmailApi(email, request.getThreadId()))
-                .contextWrite(ctx -> ctx.put(Authentication.class, auth))
-                .onErrorMap(e -> {
-                    if (e.getMessage() != null && e.getMessage().contains("401")) {
-                        log.error("Gmail API returned 401 Unauthorized for user {}", currentUser.getEmail());
-                        return new RuntimeException("Gmail authentication failed. Please logout and login again with Google.");
-                    }
-                    return e;
-                });
+        return Mono.just(currentUser);
     }
 
     public Mono<String> modifyMessageLabels(ModifyEmailRequest request) {
@@ -277,6 +857,14 @@ public class ProxyMailService {
                  .bodyValue(payload)
                  .retrieve()
                  .bodyToMono(String.class)
+                .flatMap(response -> currentUserId()
+                        .doOnNext(userId -> {
+                            threadDetailCache.invalidate(userId, request.getThreadId());
+                            threadListCache.invalidateUser(userId);
+                            // Message counts on the touched labels are now stale
+                            labelDetailCache.asMap().keySet().removeIf(key -> key.startsWith(userId + ":"));
+                        })
+                        .thenReturn(response))
                 .map(response -> "Labels modified successfully")
                 .onErrorMap(e ->
                         new RuntimeException("Failed to modify message labels")
@@ -288,6 +876,12 @@ public class ProxyMailService {
                 .uri("/messages/{id}", messageId)
                  .retrieve()
                  .bodyToMono(Void.class)
+                .then(currentUserId()
+                        .doOnNext(userId -> {
+                            threadDetailCache.invalidateMessage(userId, messageId);
+                            threadListCache.invalidateUser(userId);
+                        })
+                        .then())
                 .onErrorMap(e -> new RuntimeException("Failed to delete message", e));
     }
 
@@ -296,119 +890,79 @@ public class ProxyMailService {
                 .uri("/threads/{id}", mailId)
                  .retrieve()
                  .bodyToMono(Void.class)
+                .then(currentUserId()
+                        .doOnNext(userId -> {
+                            threadDetailCache.invalidate(userId, mailId);
+                            threadListCache.invalidateUser(userId);
+                        })
+                        .then())
                 .onErrorMap(e -> new RuntimeException("Failed to delete message", e));
     }
 
+    /**
+     * Sends through Gmail's media upload endpoint as multipart/related (JSON metadata + message/rfc822),
+     * so the MIME writer streams straight into the request body instead of building a base64 string.
+     * A first pass only counts bytes to announce the Content-Length; both passes emit identical output
+     * because headers and boundaries are fixed by {@code saveChanges()}.
+     */
     private Mono<GmailSendResponse> sendToGmailApi(MimeMessage email, String threadId) {
         return Mono.fromCallable(() -> {
-            try {
-                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-                email.writeTo(buffer);
-                byte[] rawBytes = buffer.toByteArray();
-                String encodedEmail = Base64.getUrlEncoder().encodeToString(rawBytes);
-
-                Map<String, String> payload;
-                if (threadId != null) {
-                    payload = Map.of("raw", encodedEmail, "threadId", threadId);
-                } else {
-                    payload = Map.of("raw", encodedEmail);
-                }
-                return payload;
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create email payload", e);
-            }
-        })
+                    email.saveChanges();
+                    CountingOutputStream counter = new CountingOutputStream();
+                    email.writeTo(counter);
+                    return counter.count;
+                })
                 .subscribeOn(Schedulers.boundedElastic())
-                .flatMap(payload -> gmailWebClient.post()
-                        .uri("/messages/send")
-                         .bodyValue(payload)
-                         .retrieve()
-                         .bodyToMono(GmailSendResponse.class));
-    }
-
-    private ThreadDetailResponse parseListMessage(ThreadDetail threadDetail) {
-        ThreadDetailResponse threadDetailResponse = ThreadDetailResponse.builder()
-                .id(threadDetail.getId())
-                .snippet(threadDetail.getSnippet())
-                .labelIds(threadDetail.getLabelIds())
-                .messages(new ArrayList<>())
-                .build();
-        if (threadDetail.getMessages() != null) {
-            Set<String> allLabelIds = new HashSet<>();
-            if (threadDetailResponse.getLabelIds() != null) {
-                allLabelIds.addAll(threadDetailResponse.getLabelIds());
-            }
-            
-            for (Message message : threadDetail.getMessages()) {
-                MessageDetailResponse messageDetailResponse = parseMessage(message);
-                threadDetailResponse.getMessages().add(messageDetailResponse);
-                if (messageDetailResponse.getLabelIds() != null) {
-                    allLabelIds.addAll(messageDetailResponse.getLabelIds());
-                }
-            }
-            threadDetailResponse.setLabelIds(new ArrayList<>(allLabelIds));
-        }
-        return threadDetailResponse;
+                .onErrorMap(e -> new RuntimeException("Failed to create email payload", e))
+                .flatMap(messageLength -> uploadMessage(messageLength, email::writeTo, threadId));
     }
 
-    private MessageDetailResponse parseMessage(Message message) {
-        MessageDetailResponse messageDetailResponse = MessageDetailResponse.builder()
-                .id(message.getId())
-                .threadId(message.getThreadId())
-                .snippet(message.getSnippet())
-                .labelIds(message.getLabelIds())
-                .attachments(new ArrayList<>())
-                .build();
-        if (message.getPayload() != null) {
-            List<MessagePartHeader> headers = message.getPayload().getHeaders();
-            messageDetailResponse.setMessageId(getHeader(headers, "Message-ID"));
-            messageDetailResponse.setFrom(getHeader(headers, "From"));
-            messageDetailResponse.setTo(getHeader(headers, "To"));
-            messageDetailResponse.setCc(getHeader(headers, "Cc"));
-            messageDetailResponse.setBcc(getHeader(headers, "Bcc"));
-            messageDetailResponse.setSubject(getHeader(headers, "Subject"));
-            String dateStr = getHeader(headers, "Date");
-            if (dateStr != null && !dateStr.isEmpty()) {
-                try {
-                    Instant instant = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(dateStr));
-                    messageDetailResponse.setDate(instant.atOffset(ZoneOffset.UTC).toString());
-                } catch (Exception e) {
-                    messageDetailResponse.setDate(dateStr);
-                }
+    private Mono<GmailSendResponse> uploadMessage(long messageLength, MessageWriter writer, String threadId) {
+        String boundary = "upload_" + UUID.randomUUID().toString().replace("-", "");
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Type: application/json; charset=UTF-8\r\n\r\n"
+                + (threadId != null ? "{\"threadId\":\"" + threadId.replace("\"", "") + "\"}" : "{}") + "\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Type: message/rfc822\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        Publisher<DataBuffer> body = DataBufferUtils.outputStreamPublisher(out -> {
+            try {
+                out.write(head);
+                writer.writeTo(out);
+                out.write(tail);
+            } catch (IOException | MessagingException e) {
+                throw new RuntimeException("Failed to write email", e);
             }
-            traverseParts(message.getPayload(), messageDetailResponse);
-        }
-        return messageDetailResponse;
+        }, DefaultDataBufferFactory.sharedInstance, task -> Schedulers.boundedElastic().schedule(task), UPLOAD_CHUNK_SIZE);
+        return gmailWebClient.post()
+                .uri(SEND_UPLOAD_URL)
+                .contentType(MediaType.parseMediaType("multipart/related; boundary=" + boundary))
+                .contentLength(head.length + messageLength + tail.length)
+                .body(body, DataBuffer.class)
+                .retrieve()
+                .bodyToMono(GmailSendResponse.class);
     }
 
-    private void traverseParts(MessagePart part, MessageDetailResponse messageDetailResponse) {
-        if (part == null)
-            return;
-        if (part.getBody() != null && part.getBody().getData() != null) {
-            String decoded = decodeBase64UrlSafe(part.getBody().getData());
-            switch (part.getMimeType().toLowerCase()) {
-                case "text/plain":
-                    if (messageDetailResponse.getTextBody() == null) {
-                        messageDetailResponse.setTextBody(decoded);
-                    }
-                    break;
-                case "text/html":
-                    if (messageDetailResponse.getHtmlBody() == null) {
-                        messageDetailResponse.setHtmlBody(decoded);
-                    }
-                    break;
-            }
-        }
-        if (part.getFilename() != null && !part.getFilename().isBlank()) {
-            messageDetailResponse.getAttachments().add(new Attachment(
-                    part.getFilename(),
-                    part.getMimeType(),
-                    part.getBody() != null ? part.getBody().getAttachmentId() : null));
+    private interface MessageWriter {
+        void writeTo(OutputStream out) throws IOException, MessagingException;
+    }
+
+    private static final String SEND_UPLOAD_URL =
+            "https://gmail.googleapis.com/upload/gmail/v1/users/me/messages/send?uploadType=multipart";
+    private static final int UPLOAD_CHUNK_SIZE = 64 * 1024;
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
         }
-        if (part.getParts() != null) {
-            for (MessagePart child : part.getParts()) {
-                traverseParts(child, messageDetailResponse);
-            }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
         }
     }
 
@@ -422,13 +976,6 @@ public class ProxyMailService {
         return null;
     }
 
-    private String decodeBase64UrlSafe(String data) {
-        if (data == null)
-            return null;
-        byte[] decoded = Base64.getUrlDecoder().decode(data);
-        return new String(decoded, StandardCharsets.UTF_8);
-    }
-
     private MimeMessage createMimeMessage(EmailSendRequest request) throws MessagingException, IOException {
         Session session = Session.getDefaultInstance(new Properties(), null);
         MimeMessage email = new MimeMessage(session);
@@ -459,14 +1006,8 @@ public class ProxyMailService {
                     MimeBodyPart attachmentPart = new MimeBodyPart();
                     String fileName = file.getOriginalFilename();
 
-                    try {
-                        jakarta.activation.DataSource ds = new jakarta.mail.util.ByteArrayDataSource(file.getBytes(),
-                                file.getContentType() != null ? file.getContentType() : "application/octet-stream");
-                        attachmentPart.setDataHandler(new jakarta.activation.DataHandler(ds));
-                    } catch (Exception ex) {
-                        attachmentPart.setContent(file.getBytes(),
-                                file.getContentType() != null ? file.getContentType() : "application/octet-stream");
-                    }
+                    // Streamed from the upload when the message is written, never buffered here
+                    attachmentPart.setDataHandler(new jakarta.activation.DataHandler(new MultipartFileDataSource(file)));
 
                     if (fileName != null) {
                         try {
@@ -671,7 +1212,7 @@ public class ProxyMailService {
         return uriSpec
                 .retrieve()
                 .bodyToMono(Message.class)
-                .map(this::parseMessage)
+                .map(GmailMessageParser::parseMessage)
                 .flatMap(this::generateSummary)
                 .onErrorReturn(new EmailSummaryResponse("Failed to load message"));
     }
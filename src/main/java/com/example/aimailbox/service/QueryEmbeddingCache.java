@@ -0,0 +1,63 @@
+package com.example.aimailbox.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Embeddings of semantic search queries. Queries are normalized (trimmed, lower-cased, whitespace
+ * collapsed) and keyed like stored content, so an in-memory LRU sits in front of
+ * {@code embedding_cache} and repeat queries survive restarts without a Gemini call.
+ */
+@Component
+public class QueryEmbeddingCache {
+    private final EmbeddingStore embeddingStore;
+    private final AsyncCache<String, float[]> cache;
+
+    public QueryEmbeddingCache(EmbeddingStore embeddingStore,
+                               @Value("${cache.query-embedding.max-entries:10000}") long maxEntries) {
+        this.embeddingStore = embeddingStore;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Embedding of the normalized query; empty when it could not be computed. Concurrent misses for
+     * the same query share one lookup, which runs on boundedElastic rather than inside the cache, and
+     * a failed lookup is not cached.
+     */
+    public Mono<float[]> get(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return Mono.empty();
+        }
+        // The hash covers the model, so a model change never serves old vectors
+        return Mono.fromFuture(() -> cache.get(EmbeddingStore.contentHash(normalized),
+                (key, executor) -> Mono.fromCallable(() -> embeddingStore.resolve(Map.of(key, normalized)).get(key))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .toFuture()));
+    }
+
+    static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.synchronous().stats();
+        return Map.of(
+                "size", cache.synchronous().estimatedSize(),
+                "hits", stats.hitCount(),
+                "misses", stats.missCount(),
+                "hitRate", stats.hitRate(),
+                "evictions", stats.evictionCount());
+    }
+}
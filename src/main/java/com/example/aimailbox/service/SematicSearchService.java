@@ -1,24 +1,32 @@
 package com.example.aimailbox.service;
 
 import com.example.aimailbox.dto.response.EmailResponse;
+import com.example.aimailbox.dto.response.ListHistoryResponse;
+import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import com.example.aimailbox.dto.response.mail.History;
+import com.example.aimailbox.dto.response.mail.HistoryMessage;
 import com.example.aimailbox.helper.UserHelper;
 import com.example.aimailbox.model.Email;
 import com.example.aimailbox.model.User;
 import com.example.aimailbox.repository.EmailRepository;
+import com.example.aimailbox.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestParam;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
-import reactor.util.context.Context;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,20 +37,16 @@ public class SematicSearchService {
     private final ProxyMailService proxyMailService;
     private final EmailService emailService;
     private final UserHelper userHelper;
-    private final EmbeddingService embeddingService;
-    public Mono<Void> syncEmails() {
-        return userHelper.getCurrentUser()
-                .doOnNext(this::syncEmailFromGmailToDB)
-                .then();
-    }
-
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final UserRepository userRepository;
+    private final ThreadDetailCache threadDetailCache;
     public List<EmailResponse> searchSematic( String query) {
         User user = userHelper.getUser();
         if (query == null || query.isBlank()) {
             return Collections.emptyList();
         }
         try {
-            float[] queryVector = embeddingService.getEmbedding(query).block();
+            float[] queryVector = queryEmbeddingCache.get(query).block();
             if (queryVector == null || queryVector.length == 0) {
                 log.warn("Embedding service returned empty vector");
                 return Collections.emptyList();
@@ -56,73 +60,146 @@ public class SematicSearchService {
             return Collections.emptyList();
         }
     }
-    private void syncEmailFromGmailToDB(User user) {
-        String query;
-        int batchSize;
-        boolean fetchAll;
-        Instant lastReceived = emailRepository
-                .findFirstByUserOrderByReceivedAtDesc(user)
-                .map(Email::getReceivedAt)
-                .orElse(null);
+    /**
+     * Newest receivedAt stored for the user; blocking.
+     */
+    Optional<Instant> lastReceivedAt(User user) {
+        return emailRepository.findFirstByUserOrderByReceivedAtDesc(user).map(Email::getReceivedAt);
+    }
 
-        if (lastReceived == null) {
-            query = "";
-            batchSize = 100;
-            fetchAll = false;
-        } else {
-            query = "after:" + lastReceived.getEpochSecond();
-            batchSize = 50;
-            fetchAll = true;
-        }
+    /**
+     * Replays Gmail history from {@code startHistoryId} and emits the number of threads changed.
+     * Errors with a 404 when Gmail no longer keeps history that far back.
+     */
+    Mono<Integer> syncFromHistory(User user, String startHistoryId) {
+        HistoryDelta delta = new HistoryDelta();
+        return fetchHistoryPages(startHistoryId)
+                .doOnNext(delta::collect)
+                .reduce(startHistoryId, (latest, page) -> page.getHistoryId() != null ? page.getHistoryId() : latest)
+                .flatMap(latestHistoryId -> applyHistoryDelta(user, delta)
+                        .flatMap(complete -> {
+                            if (!complete) {
+                                log.warn("Some history changes failed for user {}, keeping checkpoint {}", user.getEmail(), startHistoryId);
+                                return Mono.empty();
+                            }
+                            return saveHistoryCheckpoint(user, latestHistoryId);
+                        }))
+                // Deferred: the delta is only filled once the history pages have been read
+                .then(Mono.fromCallable(() -> delta.threadsToRefresh.size() + delta.threadsToRelabel.size()));
+    }
 
-        Authentication auth = new UsernamePasswordAuthenticationToken(user, null, List.of());
-        fetchPageRecursive(user, query, batchSize, null, fetchAll)
-                .contextWrite(Context.of(Authentication.class, auth))
-                .subscribeOn(Schedulers.boundedElastic())
-                .subscribe(
-                        null,
-                        error -> log.error("Sync FAILED for user {}: ", user.getEmail(), error),
-                        () -> log.info("Sync COMPLETED for user {}. Mode: {}", user.getEmail(), fetchAll ? "FULL SYNC" : "INITIAL BATCH")
-                );
+    private Flux<ListHistoryResponse> fetchHistoryPages(String startHistoryId) {
+        return proxyMailService.getListHistory(startHistoryId, null)
+                .expand(page -> page.getNextPageToken() != null && !page.getNextPageToken().isBlank()
+                        ? proxyMailService.getListHistory(startHistoryId, page.getNextPageToken())
+                        : Mono.empty());
     }
 
-    private Flux<Void> fetchPageRecursive(User user, String query, int maxResults, String pageToken, boolean fetchAll) {
-        return proxyMailService.getListThreads(maxResults, pageToken, query, null, false)
-                .flatMapMany(response -> {
-                    if (response == null || response.getThreads() == null || response.getThreads().isEmpty()) {
-                        return Flux.empty();
-                    }
+    /**
+     * Re-fetches threads that gained or lost messages and re-reads only the labels of the rest.
+     * Emits false if any change could not be applied, so the checkpoint is not advanced.
+     */
+    private Mono<Boolean> applyHistoryDelta(User user, HistoryDelta delta) {
+        AtomicBoolean complete = new AtomicBoolean(true);
 
-                    Flux<Void> currentBatchProcessing = Flux.fromIterable(response.getThreads())
-                            .flatMap(shortThread ->
-                                            proxyMailService.getThreadDetail(shortThread.getId())
-                                                    .flatMap(detail ->
-                                                            Mono.fromRunnable(() -> {
-                                                                        try {
-                                                                            emailService.saveThreadToDatabase(user, detail);
-                                                                        } catch (Exception e) {
-                                                                            log.error("Failed to save thread {}: {}", detail.getId(), e.getMessage());
-                                                                        }
-                                                                    })
-                                                                    .subscribeOn(Schedulers.boundedElastic())
-                                                                    .then()
-                                                    )
-                                                    .onErrorResume(e -> {
-                                                        log.warn("Error fetching thread details {}: {}", shortThread.getId(), e.getMessage());
-                                                        return Mono.empty();
-                                                    }),
-                                    5 // Concurrency Limit
-                            );
+        Flux<Void> refreshThreads = proxyMailService.getThreadDetails(new ArrayList<>(delta.threadsToRefresh))
+                .collectList()
+                .flatMapMany(items -> {
+                    List<ThreadDetailResponse> changed = new ArrayList<>();
+                    List<String> removed = new ArrayList<>();
+                    for (var item : items) {
+                        if (item.isSuccess()) {
+                            changed.add(item.getBody());
+                        } else if (item.getStatus() == 404) {
+                            removed.add(item.getId());
+                        } else {
+                            log.warn("Error refreshing thread {} from history: {} {}", item.getId(), item.getStatus(), item.getError());
+                            complete.set(false);
+                        }
+                    }
+                    return Mono.fromRunnable(() -> {
+                                emailService.saveThreadsToDatabase(user, changed);
+                                removed.forEach(threadId -> emailService.deleteThreadFromDatabase(user, threadId));
+                            })
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .then();
+                })
+                .onErrorResume(e -> {
+                    log.warn("Error saving threads from history: {}", e.getMessage());
+                    complete.set(false);
+                    return Mono.empty();
+                });
 
-                    String nextPage = response.getNextPageToken();
-                    if (nextPage != null && !nextPage.isBlank() && fetchAll) {
-                        return currentBatchProcessing.concatWith(
-                                fetchPageRecursive(user, query, maxResults, nextPage, true) // Tiếp tục đệ quy
-                        );
-                    } else {
-                        return currentBatchProcessing;
+        // History reports labels per message; a thread's labels are the union over its messages, so they are re-read
+        Flux<Void> patchLabels = proxyMailService.getThreadLabels(new ArrayList<>(delta.threadsToRelabel))
+                .doOnNext(item -> threadDetailCache.invalidate(user.getId(), item.getId()))
+                .concatMap(item -> {
+                    if (!item.isSuccess() && item.getStatus() != 404) {
+                        log.warn("Error reading labels of thread {} from history: {} {}", item.getId(), item.getStatus(), item.getError());
+                        complete.set(false);
+                        return Mono.<Void>empty();
                     }
+                    return Mono.<Void>fromRunnable(() -> {
+                                if (item.isSuccess()) {
+                                    emailService.applyThreadLabels(user, item.getId(), item.getBody());
+                                } else {
+                                    emailService.deleteThreadFromDatabase(user, item.getId());
+                                }
+                            })
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .onErrorResume(e -> {
+                                log.warn("Error applying labels to thread {}: {}", item.getId(), e.getMessage());
+                                complete.set(false);
+                                return Mono.empty();
+                            });
                 });
+
+        return refreshThreads.thenMany(patchLabels)
+                .then(Mono.fromSupplier(complete::get));
+    }
+
+    Mono<Void> saveHistoryCheckpoint(User user, String historyId) {
+        if (historyId == null || historyId.isBlank()) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> userRepository.updateGmailHistoryId(user.getId(), historyId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * Folds Gmail history records into the set of threads to re-fetch and the threads whose
+     * messages did not change but whose labels did.
+     */
+    private static class HistoryDelta {
+        final Set<String> threadsToRefresh = new LinkedHashSet<>();
+        final Set<String> threadsToRelabel = new LinkedHashSet<>();
+
+        void collect(ListHistoryResponse page) {
+            if (page.getHistory() == null) {
+                return;
+            }
+            for (History history : page.getHistory()) {
+                forEachThread(history.getMessagesAdded(), threadsToRefresh::add);
+                forEachThread(history.getMessagesDeleted(), threadsToRefresh::add);
+                forEachThread(history.getLabelsAdded(), threadsToRelabel::add);
+                forEachThread(history.getLabelsRemoved(), threadsToRelabel::add);
+            }
+            // Re-fetched threads pick up their labels anyway
+            threadsToRelabel.removeAll(threadsToRefresh);
+        }
+
+        private static void forEachThread(List<HistoryMessage> changes, Consumer<String> action) {
+            if (changes == null) {
+                return;
+            }
+            for (HistoryMessage change : changes) {
+                if (change.getMessage() == null || change.getMessage().getThreadId() == null) {
+                    continue;
+                }
+                action.accept(change.getMessage().getThreadId());
+            }
+        }
     }
 
     private EmailResponse mapToResponse(Email email) {
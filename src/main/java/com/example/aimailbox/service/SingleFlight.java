@@ -0,0 +1,63 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.config.GmailPriority;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent reads: callers asking for the same key while a call is in flight
+ * share its result instead of starting another upstream exchange. Same approach as the token
+ * refresh in {@link OAuthTokenService}; nothing is kept once the call completes.
+ * <p>
+ * A shared call runs in the Reactor context of the caller that started it, including its
+ * {@link GmailPriority}. Calls are therefore keyed by lane: an interactive caller never waits on
+ * background work, while a background caller may join an interactive call already in flight.
+ */
+@Component
+public class SingleFlight {
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String key, Supplier<Mono<T>> call) {
+        return Mono.deferContextual(ctx -> {
+            calls.incrementAndGet();
+            GmailPriority priority = ctx.getOrDefault(GmailPriority.class, GmailPriority.INTERACTIVE);
+            if (priority != GmailPriority.INTERACTIVE) {
+                Mono<?> interactive = inFlight.get(laneKey(GmailPriority.INTERACTIVE, key));
+                if (interactive != null) {
+                    shared.incrementAndGet();
+                    return (Mono<T>) interactive;
+                }
+            }
+            boolean[] started = {false};
+            Mono<?> operation = inFlight.computeIfAbsent(laneKey(priority, key), k -> {
+                started[0] = true;
+                return call.get()
+                        .doFinally(signal -> inFlight.remove(k))
+                        .cache();
+            });
+            if (!started[0]) {
+                shared.incrementAndGet();
+            }
+            return (Mono<T>) operation;
+        });
+    }
+
+    private static String laneKey(GmailPriority priority, String key) {
+        return priority + ":" + key;
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "calls", calls.get(),
+                "coalesced", shared.get(),
+                "inFlight", inFlight.size());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.repository.EmailRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory view of each user's snoozed threads (threadId -> snoozedUntil), loaded from the
+ * database on first use and kept current by snooze, unsnooze, restore and delete on this instance,
+ * so list filtering needs no database round trip. Each user's view is reloaded after
+ * {@code snooze.index.ttl-seconds}, which bounds how long a change made on another instance
+ * stays invisible here.
+ */
+@Component
+public class SnoozeIndex {
+    private final EmailRepository emailRepository;
+    private final Cache<Long, Map<String, Instant>> snoozedByUser;
+
+    public SnoozeIndex(EmailRepository emailRepository,
+                       @Value("${snooze.index.ttl-seconds:15}") long ttlSeconds) {
+        this.emailRepository = emailRepository;
+        this.snoozedByUser = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, ttlSeconds)))
+                .maximumSize(100_000)
+                .build();
+    }
+
+    public boolean isSnoozed(Long userId, String threadId) {
+        Instant until = threadsOf(userId).get(threadId);
+        return until != null && until.isAfter(Instant.now());
+    }
+
+    public void snooze(Long userId, String threadId, Instant until) {
+        if (until == null) {
+            unsnooze(userId, threadId);
+            return;
+        }
+        Map<String, Instant> threads = snoozedByUser.getIfPresent(userId);
+        if (threads != null) {
+            threads.put(threadId, until);
+        }
+    }
+
+    public void unsnooze(Long userId, String threadId) {
+        Map<String, Instant> threads = snoozedByUser.getIfPresent(userId);
+        if (threads != null) {
+            threads.remove(threadId);
+        }
+    }
+
+    public boolean isLoaded(Long userId) {
+        return snoozedByUser.getIfPresent(userId) != null;
+    }
+
+    /** Loads the user's snoozed threads if not in memory or expired; blocking, so call off the event loop. */
+    public void load(Long userId) {
+        threadsOf(userId);
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "users", snoozedByUser.estimatedSize(),
+                "threads", snoozedByUser.asMap().values().stream().mapToInt(Map::size).sum());
+    }
+
+    private Map<String, Instant> threadsOf(Long userId) {
+        return snoozedByUser.get(userId, id -> {
+            Map<String, Instant> threads = new ConcurrentHashMap<>();
+            for (Object[] row : emailRepository.findSnoozedThreadsByUserId(id, Instant.now())) {
+                threads.put((String) row[0], (Instant) row[1]);
+            }
+            return threads;
+        });
+    }
+}
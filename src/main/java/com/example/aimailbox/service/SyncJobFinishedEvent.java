@@ -0,0 +1,10 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.model.SyncJobMode;
+import com.example.aimailbox.model.SyncJobStatus;
+
+/**
+ * Published by {@link SyncJobService} when a job it ran reaches a final status.
+ */
+public record SyncJobFinishedEvent(Long jobId, Long userId, SyncJobMode mode, SyncJobStatus status, int threadsSynced) {
+}
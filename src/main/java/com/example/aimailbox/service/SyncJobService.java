@@ -0,0 +1,562 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.config.GmailPriority;
+import com.example.aimailbox.dto.response.SyncJobResponse;
+import com.example.aimailbox.helper.UserHelper;
+import com.example.aimailbox.model.SyncJob;
+import com.example.aimailbox.model.SyncJobMode;
+import com.example.aimailbox.model.SyncJobStatus;
+import com.example.aimailbox.model.SyncJobWindow;
+import com.example.aimailbox.model.User;
+import com.example.aimailbox.repository.SyncJobRepository;
+import com.example.aimailbox.repository.SyncJobWindowRepository;
+import com.example.aimailbox.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Gmail to database syncs as persisted jobs. At most one unfinished job exists per user,
+ * listing jobs checkpoint their page token after every page, and jobs whose owner stopped
+ * (restart, deploy, crash) are resumed from their checkpoint by the next instance that sees
+ * their heartbeat go stale.
+ * <p>
+ * A user with nothing stored yet gets a backfill: the mailbox history is split into date windows
+ * that are listed and hydrated in parallel, newest first, each with its own page token. A backfill
+ * runs until its thread or time budget is spent; the windows left over are continued by later
+ * jobs, alternating with incremental syncs so new mail keeps arriving meanwhile.
+ */
+@Service
+@Slf4j
+public class SyncJobService {
+    private static final Set<SyncJobStatus> ACTIVE = EnumSet.of(SyncJobStatus.QUEUED, SyncJobStatus.RUNNING);
+    private static final int INITIAL_PAGE_SIZE = 100;
+    private static final int FULL_PAGE_SIZE = 50;
+    private static final int BACKFILL_PAGE_SIZE = 100;
+
+    private final SyncJobRepository syncJobRepository;
+    private final SyncJobWindowRepository syncJobWindowRepository;
+    private final UserRepository userRepository;
+    private final SematicSearchService sematicSearchService;
+    private final SyncPipeline syncPipeline;
+    private final ProxyMailService proxyMailService;
+    private final UserHelper userHelper;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration staleAfter;
+    private final int backfillWindowDays;
+    private final int backfillMaxYears;
+    private final int backfillWindowParallelism;
+    private final int backfillMaxThreads;
+    private final Duration backfillMaxDuration;
+
+    // Identifies this instance as the owner of the jobs it runs
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<Long, Disposable> running = new ConcurrentHashMap<>();
+    private final Scheduler heartbeatScheduler = Schedulers.newSingle("sync-job-heartbeat", true);
+    private Disposable heartbeatTask;
+
+    public SyncJobService(SyncJobRepository syncJobRepository,
+                          SyncJobWindowRepository syncJobWindowRepository,
+                          UserRepository userRepository,
+                          SematicSearchService sematicSearchService,
+                          SyncPipeline syncPipeline,
+                          ProxyMailService proxyMailService,
+                          UserHelper userHelper,
+                          PlatformTransactionManager transactionManager,
+                          ApplicationEventPublisher eventPublisher,
+                          @Value("${sync.job.stale-after-seconds:120}") long staleAfterSeconds,
+                          @Value("${sync.backfill.window-days:30}") int backfillWindowDays,
+                          @Value("${sync.backfill.max-years:10}") int backfillMaxYears,
+                          @Value("${sync.backfill.window-parallelism:3}") int backfillWindowParallelism,
+                          @Value("${sync.backfill.max-threads:20000}") int backfillMaxThreads,
+                          @Value("${sync.backfill.max-minutes:60}") long backfillMaxMinutes) {
+        this.syncJobRepository = syncJobRepository;
+        this.syncJobWindowRepository = syncJobWindowRepository;
+        this.userRepository = userRepository;
+        this.sematicSearchService = sematicSearchService;
+        this.syncPipeline = syncPipeline;
+        this.proxyMailService = proxyMailService;
+        this.userHelper = userHelper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.staleAfter = Duration.ofSeconds(staleAfterSeconds);
+        this.backfillWindowDays = Math.max(1, backfillWindowDays);
+        this.backfillMaxYears = Math.max(1, backfillMaxYears);
+        this.backfillWindowParallelism = Math.max(1, backfillWindowParallelism);
+        this.backfillMaxThreads = Math.max(1, backfillMaxThreads);
+        this.backfillMaxDuration = Duration.ofMinutes(Math.max(1, backfillMaxMinutes));
+    }
+
+    /**
+     * Starts a sync for the current user, or returns the one already queued or running.
+     */
+    public Mono<SyncJobResponse> start() {
+        return userHelper.getCurrentUser()
+                .publishOn(Schedulers.boundedElastic())
+                .map(user -> {
+                    SyncJob job = findOrCreate(user.getId());
+                    launch(job.getId());
+                    return toResponse(syncJobRepository.findById(job.getId()).orElse(job));
+                });
+    }
+
+    /**
+     * Starts or joins a sync for {@code userId} outside any request. Returns true when this instance
+     * runs the job, in which case a {@link SyncJobFinishedEvent} follows once it ends.
+     */
+    public boolean startInBackground(Long userId) {
+        return launch(findOrCreate(userId).getId());
+    }
+
+    public Mono<SyncJobResponse> getStatus(Long id) {
+        return userHelper.getCurrentUser()
+                .publishOn(Schedulers.boundedElastic())
+                .map(user -> syncJobRepository.findByIdAndUserId(id, user.getId())
+                        .orElseThrow(() -> new RuntimeException("Sync job not found")))
+                .map(this::toResponse);
+    }
+
+    public Mono<SyncJobResponse> getLatest() {
+        return userHelper.getCurrentUser()
+                .publishOn(Schedulers.boundedElastic())
+                .map(user -> syncJobRepository.findFirstByUserIdOrderByCreatedAtDesc(user.getId())
+                        .orElseThrow(() -> new RuntimeException("Sync job not found")))
+                .map(this::toResponse);
+    }
+
+    /**
+     * Cancels a queued or running job. A job running on another instance stops after its current page.
+     */
+    public Mono<SyncJobResponse> cancel(Long id) {
+        return userHelper.getCurrentUser()
+                .publishOn(Schedulers.boundedElastic())
+                .map(user -> {
+                    if (syncJobRepository.requestCancel(id, user.getId()) > 0) {
+                        Disposable local = running.remove(id);
+                        if (local != null) {
+                            local.dispose();
+                            finish(id, SyncJobStatus.CANCELLED, null);
+                        } else {
+                            cancelUnclaimed(id);
+                        }
+                    }
+                    return syncJobRepository.findByIdAndUserId(id, user.getId())
+                            .orElseThrow(() -> new RuntimeException("Sync job not found"));
+                })
+                .map(this::toResponse);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        resumeStaleJobs();
+    }
+
+    /**
+     * Picks up unfinished jobs nobody is running, including those released by an instance that shut down.
+     */
+    @Scheduled(fixedDelayString = "${sync.job.resume-interval-ms:60000}", initialDelayString = "${sync.job.resume-interval-ms:60000}")
+    public void resumeStaleJobs() {
+        try {
+            for (SyncJob job : syncJobRepository.findResumable(ACTIVE, Instant.now().minus(staleAfter))) {
+                if (running.containsKey(job.getId())) {
+                    // Ours and alive; only the heartbeat fell behind
+                    continue;
+                }
+                if (job.isCancelRequested()) {
+                    cancelUnclaimed(job.getId());
+                } else {
+                    log.info("Resuming sync job {} for user {} after {} pages", job.getId(), job.getUserId(), job.getPagesSynced());
+                    launch(job.getId());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to resume sync jobs", e);
+        }
+    }
+
+    @PostConstruct
+    void startHeartbeat() {
+        // Off the shared @Scheduled thread, so slow scheduled work elsewhere cannot make our jobs look stale
+        long periodMs = Math.max(1000, staleAfter.toMillis() / 4);
+        heartbeatTask = heartbeatScheduler.schedulePeriodically(this::heartbeat, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    void heartbeat() {
+        if (running.isEmpty()) {
+            return;
+        }
+        try {
+            List<Long> ids = List.copyOf(running.keySet());
+            if (syncJobRepository.heartbeat(ids, instanceId, Instant.now()) < ids.size()) {
+                stopLostJobs(ids);
+            }
+        } catch (Exception e) {
+            log.warn("Sync job heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void releaseJobs() {
+        heartbeatTask.dispose();
+        heartbeatScheduler.dispose();
+        if (running.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(running.keySet());
+        running.values().forEach(Disposable::dispose);
+        syncJobRepository.release(ids, instanceId);
+        log.info("Released {} sync jobs for resumption", ids.size());
+    }
+
+    // Jobs finished meanwhile or taken over by another instance: stop running them here without touching their row
+    private void stopLostJobs(List<Long> ids) {
+        for (SyncJob job : syncJobRepository.findAllById(ids)) {
+            if (!instanceId.equals(job.getOwner()) || !ACTIVE.contains(job.getStatus())) {
+                Disposable local = running.remove(job.getId());
+                if (local != null) {
+                    log.warn("Sync job {} is no longer owned by this instance, stopping it", job.getId());
+                    local.dispose();
+                }
+            }
+        }
+    }
+
+    private SyncJob findOrCreate(Long userId) {
+        return transactionTemplate.execute(tx -> {
+            // Serializes concurrent starts for the same user, across instances too
+            User user = userRepository.lockById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            return syncJobRepository.findFirstByUserIdAndStatusInOrderByCreatedAtDesc(userId, ACTIVE)
+                    .orElseGet(() -> createJob(user));
+        });
+    }
+
+    private SyncJob createJob(User user) {
+        SyncJob backfill = unfinishedBackfill(user);
+        if (backfill == null) {
+            return syncJobRepository.save(newJob(user));
+        }
+        // Continues the backfill under a new job, which takes over its remaining windows
+        SyncJob job = syncJobRepository.save(SyncJob.builder()
+                .userId(user.getId())
+                .mode(SyncJobMode.BACKFILL)
+                .historyId(hasCheckpoint(user) ? null : backfill.getHistoryId())
+                .planned(true)
+                .build());
+        syncJobWindowRepository.adopt(backfill.getId(), job.getId());
+        return job;
+    }
+
+    // The user's latest backfill if it has windows left and it is its turn to continue
+    private SyncJob unfinishedBackfill(User user) {
+        SyncJob backfill = syncJobRepository.findFirstByUserIdAndModeOrderByCreatedAtDesc(user.getId(), SyncJobMode.BACKFILL)
+                .filter(job -> job.isPlanned() && syncJobWindowRepository.countByJobIdAndDoneFalse(job.getId()) > 0)
+                .orElse(null);
+        if (backfill == null || !hasCheckpoint(user)) {
+            return backfill;
+        }
+        // Once the checkpoint is stored, a backfill only follows an incremental sync, and not after a cancel
+        boolean lastWasBackfill = syncJobRepository.findFirstByUserIdOrderByCreatedAtDesc(user.getId())
+                .map(last -> last.getMode() == SyncJobMode.BACKFILL)
+                .orElse(false);
+        return lastWasBackfill || backfill.getStatus() == SyncJobStatus.CANCELLED ? null : backfill;
+    }
+
+    private static boolean hasCheckpoint(User user) {
+        return user.getGmailHistoryId() != null && !user.getGmailHistoryId().isBlank();
+    }
+
+    private SyncJob newJob(User user) {
+        if (hasCheckpoint(user)) {
+            return SyncJob.builder()
+                    .userId(user.getId())
+                    .mode(SyncJobMode.INCREMENTAL)
+                    .historyId(user.getGmailHistoryId())
+                    .planned(true)
+                    .build();
+        }
+        // A listing that failed part way continues from its last page instead of starting over
+        return syncJobRepository.findFirstByUserIdOrderByCreatedAtDesc(user.getId())
+                .filter(last -> last.getStatus() == SyncJobStatus.FAILED && last.isPlanned()
+                        && last.getMode() == SyncJobMode.FULL && last.getPageToken() != null)
+                .map(last -> SyncJob.builder()
+                        .userId(user.getId())
+                        .mode(last.getMode())
+                        .query(last.getQuery())
+                        .pageToken(last.getPageToken())
+                        .historyId(last.getHistoryId())
+                        .planned(true)
+                        .build())
+                .orElseGet(() -> SyncJob.builder()
+                        .userId(user.getId())
+                        .mode(SyncJobMode.FULL)
+                        .build());
+    }
+
+    /**
+     * Runs the job on this instance if nobody else is. Returns whether it was started here.
+     */
+    private boolean launch(Long jobId) {
+        if (running.containsKey(jobId)) {
+            return false;
+        }
+        Instant now = Instant.now();
+        if (syncJobRepository.claim(jobId, instanceId, now, now.minus(staleAfter)) == 0) {
+            // Finished, cancelled, or alive on another instance
+            return false;
+        }
+        SyncJob job = syncJobRepository.findById(jobId).orElseThrow();
+        User user = userRepository.findById(job.getUserId()).orElse(null);
+        if (user == null) {
+            finish(jobId, SyncJobStatus.FAILED, "User not found");
+            return false;
+        }
+        Authentication auth = new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList());
+        Disposable.Swap subscription = Disposables.swap();
+        running.put(jobId, subscription);
+        subscription.update(run(job, user)
+                .contextWrite(Context.of(Authentication.class, auth, GmailPriority.class, GmailPriority.BACKGROUND))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> running.remove(jobId))
+                .subscribe(
+                        status -> finish(jobId, status, null),
+                        error -> {
+                            if (error instanceof OwnershipLostException) {
+                                // The new owner finishes the job; writing a status here would end its run
+                                log.warn("Sync job {} was taken over by another instance, stopping here", jobId);
+                            } else {
+                                finish(jobId, SyncJobStatus.FAILED, error.getMessage() != null
+                                        ? error.getMessage() : error.getClass().getSimpleName());
+                            }
+                        }));
+        return true;
+    }
+
+    private Mono<SyncJobStatus> run(SyncJob job, User user) {
+        Mono<Void> work;
+        if (job.getMode() == SyncJobMode.INCREMENTAL) {
+            work = sematicSearchService.syncFromHistory(user, job.getHistoryId())
+                    .publishOn(Schedulers.boundedElastic())
+                    // Counted as one page so progress and the scheduler see how much changed
+                    .doOnNext(changes -> requireOwned(syncJobRepository.recordPage(job.getId(), instanceId, null,
+                            changes, Instant.now())))
+                    .then()
+                    .onErrorResume(ProxyMailService::isNotFound, e -> {
+                        // Gmail only keeps history for a limited time, start over from the thread list
+                        log.warn("History checkpoint {} expired for user {}, falling back to thread listing",
+                                job.getHistoryId(), user.getEmail());
+                        return plan(job, user).then(Mono.defer(() -> runListing(job, user)));
+                    });
+        } else {
+            work = (job.isPlanned() ? Mono.<Void>empty() : plan(job, user))
+                    .then(Mono.defer(() -> runListing(job, user)));
+        }
+        return work.then(isCancelRequested(job))
+                .map(cancelled -> cancelled ? SyncJobStatus.CANCELLED : SyncJobStatus.SUCCEEDED);
+    }
+
+    // Chooses the listing query and takes the history checkpoint before listing, so changes made meanwhile are replayed next time
+    private Mono<Void> plan(SyncJob job, User user) {
+        return Mono.fromCallable(() -> sematicSearchService.lastReceivedAt(user))
+                .subscribeOn(Schedulers.boundedElastic())
+                .zipWith(proxyMailService.getProfile())
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(lastAndProfile -> {
+                    var lastReceived = lastAndProfile.getT1();
+                    job.setMode(lastReceived.isPresent() ? SyncJobMode.FULL : SyncJobMode.BACKFILL);
+                    job.setQuery(lastReceived.map(instant -> "after:" + instant.getEpochSecond()).orElse(""));
+                    job.setHistoryId(lastAndProfile.getT2().getHistoryId());
+                    job.setPageToken(null);
+                    job.setPlanned(true);
+                    // The plan and its windows are stored together, so a re-planned job never has duplicates
+                    transactionTemplate.executeWithoutResult(tx -> {
+                        requireOwned(syncJobRepository.savePlan(job.getId(), instanceId, job.getMode(), job.getQuery(),
+                                job.getHistoryId(), Instant.now()));
+                        if (job.getMode() == SyncJobMode.BACKFILL) {
+                            syncJobWindowRepository.saveAll(backfillWindows(job.getId(), Instant.now()));
+                        }
+                    });
+                })
+                .then();
+    }
+
+    // Windows of backfillWindowDays from tomorrow back to backfillMaxYears ago, newest first
+    private List<SyncJobWindow> backfillWindows(Long jobId, Instant now) {
+        long oldest = now.atZone(ZoneOffset.UTC).minusYears(backfillMaxYears).toEpochSecond();
+        long step = Duration.ofDays(backfillWindowDays).toSeconds();
+        List<SyncJobWindow> windows = new ArrayList<>();
+        // The newest window reaches a day ahead to allow for clock skew with Gmail
+        for (long before = now.plus(1, ChronoUnit.DAYS).getEpochSecond(); before > oldest; before -= step) {
+            windows.add(SyncJobWindow.builder()
+                    .jobId(jobId)
+                    .afterEpoch(Math.max(oldest, before - step))
+                    .beforeEpoch(before)
+                    .build());
+        }
+        return windows;
+    }
+
+    private Mono<Void> runListing(SyncJob job, User user) {
+        return job.getMode() == SyncJobMode.BACKFILL ? runBackfill(job, user) : runPages(job, user);
+    }
+
+    /**
+     * Imports the job's pending windows, newest first, up to {@code backfillWindowParallelism} at a
+     * time. Every window stops before its next page once the budget is spent or the job is
+     * cancelled, keeping its page token for the job that continues it.
+     */
+    private Mono<Void> runBackfill(SyncJob job, User user) {
+        AtomicInteger threadBudget = new AtomicInteger(backfillMaxThreads);
+        Instant deadline = Instant.now().plus(backfillMaxDuration);
+        // The database is only asked while the budget lasts
+        Mono<Boolean> stop = Mono.defer(() -> threadBudget.get() <= 0 || Instant.now().isAfter(deadline)
+                ? Mono.just(true)
+                : isCancelRequested(job));
+        return Mono.fromCallable(() -> syncJobWindowRepository.findByJobIdAndDoneFalseOrderByBeforeEpochDesc(job.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(window -> runWindow(job, user, window, threadBudget, stop), backfillWindowParallelism)
+                .then(isCancelRequested(job))
+                // The checkpoint is taken at planning time, so pausing with windows left loses nothing
+                .flatMap(cancelled -> cancelled
+                        ? Mono.<Void>empty()
+                        : sematicSearchService.saveHistoryCheckpoint(user, job.getHistoryId()));
+    }
+
+    private Mono<Void> runWindow(SyncJob job, User user, SyncJobWindow window, AtomicInteger threadBudget,
+                                 Mono<Boolean> stop) {
+        return syncPipeline.run(user, window.query(), BACKFILL_PAGE_SIZE, window.getPageToken(), false, stop)
+                .concatMap(page -> Mono.fromRunnable(() -> {
+                            boolean last = page.nextPageToken() == null || page.nextPageToken().isBlank();
+                            syncJobWindowRepository.recordPage(window.getId(), last ? null : page.nextPageToken(),
+                                    page.threads(), last);
+                            requireOwned(syncJobRepository.recordPage(job.getId(), instanceId, null, page.threads(),
+                                    Instant.now()));
+                            threadBudget.addAndGet(-page.threads());
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .then();
+    }
+
+    private Mono<Void> runPages(SyncJob job, User user) {
+        int pageSize = job.getMode() == SyncJobMode.INITIAL ? INITIAL_PAGE_SIZE : FULL_PAGE_SIZE;
+        // A resumed job whose listing already finished only has the checkpoint left to store
+        Mono<Void> pages = job.getPagesSynced() > 0 && job.getPageToken() == null
+                ? Mono.empty()
+                : syncPipeline.run(user, job.getQuery(), pageSize, job.getPageToken(),
+                                job.getMode() == SyncJobMode.INITIAL, isCancelRequested(job))
+                        // Pages arrive in listing order once persisted, so each token is a safe resume point
+                        .concatMap(page -> Mono.fromRunnable(() -> recordPage(job, page))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                        .then();
+        return pages.then(isCancelRequested(job))
+                .flatMap(cancelled -> cancelled
+                        ? Mono.<Void>empty()
+                        : sematicSearchService.saveHistoryCheckpoint(user, job.getHistoryId()));
+    }
+
+    private void recordPage(SyncJob job, SyncPipeline.PageResult page) {
+        String checkpoint = job.getMode() == SyncJobMode.INITIAL ? null : page.nextPageToken();
+        job.setPageToken(checkpoint);
+        job.setPagesSynced(job.getPagesSynced() + 1);
+        requireOwned(syncJobRepository.recordPage(job.getId(), instanceId, checkpoint, page.threads(), Instant.now()));
+    }
+
+    private Mono<Boolean> isCancelRequested(SyncJob job) {
+        return Mono.fromCallable(() -> syncJobRepository.isCancelRequested(job.getId()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static void requireOwned(int updated) {
+        if (updated == 0) {
+            throw new OwnershipLostException();
+        }
+    }
+
+    private static class OwnershipLostException extends IllegalStateException {
+        OwnershipLostException() {
+            super("Sync job was taken over by another instance");
+        }
+    }
+
+    private void finish(Long jobId, SyncJobStatus status, String error) {
+        if (error != null && error.length() > 1000) {
+            error = error.substring(0, 1000);
+        }
+        try {
+            if (syncJobRepository.finish(jobId, instanceId, status, error, Instant.now()) == 0) {
+                return;
+            }
+            log.info("Sync job {} finished: {}{}", jobId, status, error != null ? " (" + error + ")" : "");
+            publishFinished(jobId);
+        } catch (Exception e) {
+            log.error("Failed to record the end of sync job {}", jobId, e);
+        }
+    }
+
+    private void cancelUnclaimed(Long jobId) {
+        Instant now = Instant.now();
+        if (syncJobRepository.cancelUnclaimed(jobId, now.minus(staleAfter), now) > 0) {
+            log.info("Sync job {} finished: {}", jobId, SyncJobStatus.CANCELLED);
+            publishFinished(jobId);
+        }
+    }
+
+    private void publishFinished(Long jobId) {
+        syncJobRepository.findById(jobId).ifPresent(job -> eventPublisher.publishEvent(new SyncJobFinishedEvent(
+                job.getId(), job.getUserId(), job.getMode(), job.getStatus(), job.getThreadsSynced())));
+    }
+
+    private SyncJobResponse toResponse(SyncJob job) {
+        Integer windowsRemaining = job.getMode() == SyncJobMode.BACKFILL
+                ? (int) syncJobWindowRepository.countByJobIdAndDoneFalse(job.getId())
+                : null;
+        return SyncJobResponse.builder()
+                .id(job.getId())
+                .status(job.getStatus())
+                .mode(job.getMode())
+                .pagesSynced(job.getPagesSynced())
+                .threadsSynced(job.getThreadsSynced())
+                .windowsRemaining(windowsRemaining)
+                .cancelRequested(job.isCancelRequested())
+                .lastError(job.getLastError())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .lastProgressAt(job.getHeartbeatAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
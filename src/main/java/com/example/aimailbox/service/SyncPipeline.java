@@ -0,0 +1,225 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.dto.response.GmailBatchItem;
+import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import com.example.aimailbox.dto.response.mail.Thread;
+import com.example.aimailbox.model.User;
+import com.example.aimailbox.repository.EmailBulkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread ingestion as list → hydrate → transform → embed → persist. Work moves in pages; each
+ * stage takes pages from a bounded buffer with its own parallelism, so a slow stage (usually
+ * embedding) stops upstream demand and Gmail listing waits instead of filling memory. Pages
+ * leave the pipeline in listing order once persisted, which makes their page token a safe
+ * checkpoint.
+ */
+@Component
+@Slf4j
+public class SyncPipeline {
+    private final ProxyMailService proxyMailService;
+    private final EmailService emailService;
+    private final EmbeddingStore embeddingStore;
+    private final EmailBulkRepository emailBulkRepository;
+
+    private final Stage list;
+    private final Stage hydrate;
+    private final Stage transform;
+    private final Stage embed;
+    private final Stage persist;
+
+    public SyncPipeline(ProxyMailService proxyMailService,
+                        EmailService emailService,
+                        EmbeddingStore embeddingStore,
+                        EmailBulkRepository emailBulkRepository,
+                        @Value("${sync.pipeline.buffer-pages:2}") int bufferPages,
+                        @Value("${sync.pipeline.hydrate-parallelism:2}") int hydrateParallelism,
+                        @Value("${sync.pipeline.transform-parallelism:2}") int transformParallelism,
+                        @Value("${sync.pipeline.embed-parallelism:2}") int embedParallelism,
+                        @Value("${sync.pipeline.persist-parallelism:1}") int persistParallelism) {
+        this.proxyMailService = proxyMailService;
+        this.emailService = emailService;
+        this.embeddingStore = embeddingStore;
+        this.emailBulkRepository = emailBulkRepository;
+        this.list = new Stage("list", 1, bufferPages);
+        this.hydrate = new Stage("hydrate", hydrateParallelism, bufferPages);
+        this.transform = new Stage("transform", transformParallelism, bufferPages);
+        this.embed = new Stage("embed", embedParallelism, bufferPages);
+        this.persist = new Stage("persist", persistParallelism, bufferPages);
+    }
+
+    /** A persisted page and the token of the page after it. */
+    public record PageResult(int threads, String nextPageToken) {
+    }
+
+    private record ListedPage(List<String> threadIds, String nextPageToken) {
+    }
+
+    private record HydratedPage(List<ThreadDetailResponse> threads, String nextPageToken) {
+    }
+
+    private record PreparedPage(EmailService.PreparedThreads prepared, String nextPageToken) {
+    }
+
+    /**
+     * Ingests the threads matching {@code query} from {@code pageToken} on, one page of
+     * {@code pageSize} at a time, or only the first page when {@code singlePage}. Listing stops
+     * early once {@code stop} emits true; it is subscribed again before every page, so it should be
+     * lazy and keep any blocking check off the caller's thread.
+     */
+    public Flux<PageResult> run(User user, String query, int pageSize, String pageToken, boolean singlePage,
+                                Mono<Boolean> stop) {
+        Flux<ListedPage> listed = listPage(query, pageSize, pageToken, stop)
+                .expand(page -> page.nextPageToken() != null && !page.nextPageToken().isBlank() && !singlePage
+                        ? listPage(query, pageSize, page.nextPageToken(), stop)
+                        : Mono.empty());
+
+        Flux<HydratedPage> hydrated = hydrate.run(listed, page -> page.threadIds().size(), page -> page.threadIds().isEmpty()
+                ? Mono.just(new HydratedPage(List.of(), page.nextPageToken()))
+                : proxyMailService.getThreadDetails(page.threadIds())
+                        .filter(item -> {
+                            if (!item.isSuccess()) {
+                                log.warn("Error fetching thread details {}: {} {}", item.getId(), item.getStatus(), item.getError());
+                            }
+                            return item.isSuccess();
+                        })
+                        .map(GmailBatchItem::getBody)
+                        .collectList()
+                        .map(threads -> new HydratedPage(threads, page.nextPageToken())));
+
+        Flux<PreparedPage> prepared = transform.runBlocking(hydrated, page -> page.threads().size(), page ->
+                new PreparedPage(emailService.prepareThreads(user, page.threads()), page.nextPageToken()));
+
+        Flux<PreparedPage> embedded = embed.runBlocking(prepared, page -> page.prepared().emails().size(), page -> {
+            emailService.applyEmbeddings(page.prepared(), embeddingStore.resolve(page.prepared().changedTexts()));
+            return page;
+        });
+
+        return persist.runBlocking(embedded, page -> page.prepared().emails().size(), page ->
+                new PageResult(emailBulkRepository.upsertThreads(page.prepared().emails()), page.nextPageToken()));
+    }
+
+    /**
+     * Stage counters of this instance since startup; each instance runs its own pipeline, so a
+     * cluster-wide view has to add them up.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Stage stage : List.of(list, hydrate, transform, embed, persist)) {
+            stats.put(stage.name, stage.stats());
+        }
+        return stats;
+    }
+
+    private Mono<ListedPage> listPage(String query, int pageSize, String pageToken, Mono<Boolean> stop) {
+        return stop.defaultIfEmpty(false)
+                .filter(stopped -> !stopped)
+                .flatMap(ignored -> list.time(proxyMailService.getListThreads(pageSize, pageToken, query, null, false)
+                        .map(response -> new ListedPage(response.getThreads() == null
+                                ? List.of()
+                                : response.getThreads().stream().map(Thread::getId).toList(),
+                                response.getNextPageToken()))))
+                .doOnNext(page -> list.completed(page.threadIds().size()));
+    }
+
+    /**
+     * One pipeline stage: a buffer of at most {@code buffer} pages in front of {@code parallelism}
+     * workers, with counters for queue depth, work in progress and throughput. Busy time covers
+     * only the work itself: not the wait for a worker thread, nor the wait for downstream demand.
+     */
+    private static class Stage {
+        final String name;
+        final int parallelism;
+        final int buffer;
+        final AtomicLong queued = new AtomicLong();
+        final AtomicLong active = new AtomicLong();
+        final AtomicLong pages = new AtomicLong();
+        final AtomicLong threads = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+
+        Stage(String name, int parallelism, int buffer) {
+            this.name = name;
+            this.parallelism = Math.max(1, parallelism);
+            this.buffer = Math.max(1, buffer);
+        }
+
+        <I, O> Flux<O> run(Flux<I> upstream, ToIntFunction<I> size, Function<I, Mono<O>> work) {
+            return buffered(upstream, size, item -> time(work.apply(item)));
+        }
+
+        /** Like {@link #run}, for blocking work, which runs on boundedElastic. */
+        <I, O> Flux<O> runBlocking(Flux<I> upstream, ToIntFunction<I> size, Function<I, O> work) {
+            return buffered(upstream, size, item -> time(Mono.fromCallable(() -> work.apply(item)))
+                    // Subscribed on the worker, so the timer starts once a thread has picked it up
+                    .subscribeOn(Schedulers.boundedElastic()));
+        }
+
+        private <I, O> Flux<O> buffered(Flux<I> upstream, ToIntFunction<I> size, Function<I, Mono<O>> timedWork) {
+            return upstream
+                    .doOnNext(item -> queued.incrementAndGet())
+                    // The stage's buffer: upstream is only asked for as many pages as fit
+                    .publishOn(Schedulers.boundedElastic(), buffer)
+                    .flatMapSequential(item -> {
+                        queued.decrementAndGet();
+                        int count = size.applyAsInt(item);
+                        return timedWork.apply(item).doOnSuccess(result -> completed(count));
+                    }, parallelism, 1);
+        }
+
+        <T> Mono<T> time(Mono<T> work) {
+            return Mono.defer(() -> {
+                active.incrementAndGet();
+                long start = System.nanoTime();
+                AtomicBoolean finished = new AtomicBoolean();
+                Runnable finish = () -> {
+                    if (finished.compareAndSet(false, true)) {
+                        active.decrementAndGet();
+                        busyNanos.addAndGet(System.nanoTime() - start);
+                    }
+                };
+                // Stopped on the work's own result, before it is handed downstream
+                return work
+                        .doOnSuccess(result -> finish.run())
+                        .doOnError(error -> {
+                            failures.incrementAndGet();
+                            finish.run();
+                        })
+                        .doOnCancel(finish);
+            });
+        }
+
+        void completed(int count) {
+            pages.incrementAndGet();
+            threads.addAndGet(count);
+        }
+
+        Map<String, Object> stats() {
+            double busySeconds = busyNanos.get() / 1e9;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("parallelism", parallelism);
+            stats.put("buffer", buffer);
+            stats.put("queueDepth", queued.get());
+            stats.put("active", active.get());
+            stats.put("pages", pages.get());
+            stats.put("threads", threads.get());
+            stats.put("failures", failures.get());
+            // Per worker; multiply by parallelism for the stage's capacity
+            stats.put("threadsPerBusySecond", busySeconds == 0 ? 0.0 : threads.get() / busySeconds);
+            return stats;
+        }
+    }
+}
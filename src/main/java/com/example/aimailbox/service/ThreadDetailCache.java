@@ -0,0 +1,129 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.dto.response.MessageDetailResponse;
+import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-user cache of parsed thread details, weighted by approximate heap size.
+ * An entry is only served while no newer historyId has been observed for its thread
+ * (from thread listings or history sync); writes through the proxy invalidate explicitly.
+ */
+@Component
+@Slf4j
+public class ThreadDetailCache {
+    private final Cache<String, ThreadDetailResponse> cache;
+
+    public ThreadDetailCache(@Value("${cache.thread-detail.max-bytes:67108864}") long maxBytes,
+                             @Value("${cache.thread-detail.ttl-minutes:10}") long ttlMinutes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, ThreadDetailResponse detail) -> estimateSize(detail))
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    public ThreadDetailResponse get(Long userId, String threadId) {
+        return cache.getIfPresent(key(userId, threadId));
+    }
+
+    public void put(Long userId, ThreadDetailResponse detail) {
+        if (detail == null || detail.getId() == null) {
+            return;
+        }
+        cache.asMap().merge(key(userId, detail.getId()), detail,
+                (current, incoming) -> isOlder(incoming.getHistoryId(), current.getHistoryId()) ? current : incoming);
+    }
+
+    /**
+     * Drops the cached thread if Gmail reports a newer historyId for it.
+     */
+    public void observeHistoryId(Long userId, String threadId, String historyId) {
+        if (threadId == null || historyId == null) {
+            return;
+        }
+        cache.asMap().computeIfPresent(key(userId, threadId),
+                (key, cached) -> isOlder(cached.getHistoryId(), historyId) ? null : cached);
+    }
+
+    public void invalidate(Long userId, String threadId) {
+        cache.invalidate(key(userId, threadId));
+    }
+
+    /**
+     * Invalidates whichever cached thread of the user contains the message.
+     */
+    public void invalidateMessage(Long userId, String messageId) {
+        String prefix = userId + ":";
+        cache.asMap().entrySet().removeIf(entry -> entry.getKey().startsWith(prefix)
+                && entry.getValue().getMessages() != null
+                && entry.getValue().getMessages().stream().anyMatch(m -> messageId.equals(m.getId())));
+    }
+
+    /**
+     * Copy of a cached thread for one caller, so callers that edit the response never touch the cached instance.
+     */
+    public static ThreadDetailResponse copy(ThreadDetailResponse detail) {
+        return detail.toBuilder()
+                .labelIds(detail.getLabelIds() != null ? new ArrayList<>(detail.getLabelIds()) : null)
+                .messages(detail.getMessages() != null ? new ArrayList<>(detail.getMessages()) : null)
+                .build();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", cache.estimatedSize());
+        result.put("weightedBytes", cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        return result;
+    }
+
+    private static String key(Long userId, String threadId) {
+        return userId + ":" + threadId;
+    }
+
+    private static boolean isOlder(String historyId, String other) {
+        if (historyId == null || other == null) {
+            return !Objects.equals(historyId, other);
+        }
+        try {
+            return Long.parseLong(historyId) < Long.parseLong(other);
+        } catch (NumberFormatException e) {
+            return !historyId.equals(other);
+        }
+    }
+
+    private static int estimateSize(ThreadDetailResponse detail) {
+        long size = 256 + length(detail.getSnippet());
+        if (detail.getMessages() != null) {
+            for (MessageDetailResponse message : detail.getMessages()) {
+                size += 512
+                        + length(message.getSnippet())
+                        + length(message.getSubject())
+                        + message.bodyLength();
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static long length(String value) {
+        // Latin-1 strings are compact; assume two bytes per char to stay on the safe side
+        return value == null ? 0 : 2L * value.length();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.dto.response.ListThreadResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user thread list pages keyed by label, query and pageToken. A page is fresh for a short
+ * time; after that it is still served (stale-while-revalidate) until it ages out, which also
+ * covers Gmail being slow or failing. The user's own writes drop their pages.
+ */
+@Component
+public class ThreadListCache {
+    private final Cache<String, Page> cache;
+    private final long freshMillis;
+
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetches = new AtomicLong();
+
+    public ThreadListCache(@Value("${cache.thread-list.fresh-seconds:30}") long freshSeconds,
+                           @Value("${cache.thread-list.max-stale-minutes:10}") long maxStaleMinutes) {
+        this.freshMillis = TimeUnit.SECONDS.toMillis(freshSeconds);
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(maxStaleMinutes, TimeUnit.MINUTES)
+                .maximumSize(20_000)
+                .build();
+    }
+
+    public record Page(ListThreadResponse response, long fetchedAt) {
+    }
+
+    public static String key(Long userId, Integer maxResults, String pageToken, String query, String labelId,
+                             Boolean includeSpamTrash) {
+        return userId + ":" + labelId + ":" + query + ":" + maxResults + ":" + includeSpamTrash + ":" + pageToken;
+    }
+
+    public Page get(String key) {
+        Page page = cache.getIfPresent(key);
+        if (page == null) {
+            misses.incrementAndGet();
+        } else if (isFresh(page)) {
+            freshHits.incrementAndGet();
+        } else {
+            staleHits.incrementAndGet();
+        }
+        return page;
+    }
+
+    public boolean isFresh(Page page) {
+        return System.currentTimeMillis() - page.fetchedAt() < freshMillis;
+    }
+
+    /**
+     * True if the page is missing or due for revalidation, i.e. worth prefetching.
+     */
+    public boolean needsFetch(String key) {
+        Page page = cache.getIfPresent(key);
+        return page == null || !isFresh(page);
+    }
+
+    public void put(String key, ListThreadResponse response) {
+        cache.put(key, new Page(copy(response), System.currentTimeMillis()));
+    }
+
+    public void invalidateUser(Long userId) {
+        String prefix = userId + ":";
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public void recordPrefetch() {
+        prefetches.incrementAndGet();
+    }
+
+    /**
+     * Callers filter and decorate list responses, so cached pages are only handed out as copies.
+     */
+    public static ListThreadResponse copy(ListThreadResponse response) {
+        return ListThreadResponse.builder()
+                .threads(response.getThreads() != null ? new ArrayList<>(response.getThreads()) : null)
+                .nextPageToken(response.getNextPageToken())
+                .resultSizeEstimate(response.getResultSizeEstimate())
+                .build();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", cache.estimatedSize());
+        result.put("freshHits", freshHits.get());
+        result.put("staleHits", staleHits.get());
+        result.put("misses", misses.get());
+        result.put("prefetches", prefetches.get());
+        return result;
+    }
+}
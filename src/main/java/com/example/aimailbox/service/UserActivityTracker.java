@@ -0,0 +1,24 @@
+package com.example.aimailbox.service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last authenticated request per user, recorded by the JWT filter. Read by the background sync
+ * scheduler to poll active users more often.
+ */
+@Component
+public class UserActivityTracker {
+    private final Map<Long, Instant> lastSeen = new ConcurrentHashMap<>();
+
+    public void recordActivity(Long userId) {
+        lastSeen.put(userId, Instant.now());
+    }
+
+    public Instant lastSeen(Long userId) {
+        return lastSeen.get(userId);
+    }
+}
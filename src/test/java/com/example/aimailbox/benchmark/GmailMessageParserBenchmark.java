@@ -0,0 +1,261 @@
+package com.example.aimailbox.benchmark;
+
+import com.example.aimailbox.dto.response.MessageDetailResponse;
+import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import com.example.aimailbox.dto.response.mail.*;
+import com.example.aimailbox.helper.GmailMessageParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous thread parser (seven header scans per message, eager body decoding,
+ * exception-driven date parsing) with {@link GmailMessageParser} on threads shaped like real
+ * Gmail responses. Run {@link #main} with the test classpath; the GC profiler reports allocation per op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GmailMessageParserBenchmark {
+
+    @Param({"1", "8"})
+    int messagesPerThread;
+
+    @Param({"true", "false"})
+    boolean rfcDateHeaders;
+
+    ThreadDetail thread;
+
+    @Setup
+    public void setUp() {
+        thread = sampleThread(messagesPerThread, rfcDateHeaders);
+    }
+
+    @Benchmark
+    public void legacyListing(Blackhole blackhole) {
+        ThreadDetailResponse parsed = LegacyParser.parseThread(thread);
+        parsed.getMessages().forEach(message -> blackhole.consume(message.getSnippet()));
+    }
+
+    @Benchmark
+    public void lazyListing(Blackhole blackhole) {
+        ThreadDetailResponse parsed = GmailMessageParser.parseThread(thread);
+        parsed.getMessages().forEach(message -> blackhole.consume(message.getSnippet()));
+    }
+
+    @Benchmark
+    public void legacyFullRead(Blackhole blackhole) {
+        ThreadDetailResponse parsed = LegacyParser.parseThread(thread);
+        parsed.getMessages().forEach(message -> {
+            blackhole.consume(message.getTextBody());
+            blackhole.consume(message.getHtmlBody());
+        });
+    }
+
+    @Benchmark
+    public void lazyFullRead(Blackhole blackhole) {
+        ThreadDetailResponse parsed = GmailMessageParser.parseThread(thread);
+        parsed.getMessages().forEach(message -> {
+            blackhole.consume(message.getTextBody());
+            blackhole.consume(message.getHtmlBody());
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GmailMessageParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    static ThreadDetail sampleThread(int messageCount, boolean rfcDateHeaders) {
+        Random random = new Random(42);
+        List<Message> messages = new ArrayList<>();
+        long receivedAt = 1_735_689_600_000L;
+        for (int i = 0; i < messageCount; i++) {
+            List<MessagePartHeader> headers = new ArrayList<>();
+            // Typical delivery headers come before the ones the parser needs
+            for (int h = 0; h < 12; h++) {
+                headers.add(new MessagePartHeader("Received", "from mail-" + h + ".example.com by mx.google.com with SMTPS id " + random.nextLong()));
+            }
+            headers.add(new MessagePartHeader("ARC-Seal", "i=1; a=rsa-sha256; t=" + receivedAt + "; cv=none; d=google.com; s=arc-20240605; b=" + randomText(random, 120)));
+            headers.add(new MessagePartHeader("DKIM-Signature", "v=1; a=rsa-sha256; c=relaxed/relaxed; d=example.com; s=20230601; b=" + randomText(random, 200)));
+            headers.add(new MessagePartHeader("MIME-Version", "1.0"));
+            headers.add(new MessagePartHeader("From", "Alice Example <alice@example.com>"));
+            headers.add(new MessagePartHeader("Date", rfcDateHeaders
+                    ? DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(receivedAt).atOffset(ZoneOffset.UTC))
+                    : "Wed, 1 Jan 2025 00:00:00 +0000 (UTC)"));
+            headers.add(new MessagePartHeader("Message-ID", "<" + UUID.randomUUID() + "@mail.example.com>"));
+            headers.add(new MessagePartHeader("Subject", "Quarterly planning notes, part " + i));
+            headers.add(new MessagePartHeader("To", "Bob Example <bob@example.com>, team@example.com"));
+            headers.add(new MessagePartHeader("Cc", "carol@example.com"));
+            headers.add(new MessagePartHeader("Content-Type", "multipart/mixed; boundary=\"000000000000abcdef\""));
+
+            String text = randomText(random, 4_000);
+            String html = "<html><body><div dir=\"ltr\">" + text.replace(" ", "&nbsp;") + "</div></body></html>";
+            MessagePart alternative = MessagePart.builder()
+                    .mimeType("multipart/alternative")
+                    .body(new MessagePartBody(null, null))
+                    .parts(List.of(
+                            MessagePart.builder().mimeType("text/plain").filename("")
+                                    .body(new MessagePartBody(encode(text), null)).build(),
+                            MessagePart.builder().mimeType("text/html").filename("")
+                                    .body(new MessagePartBody(encode(html), null)).build()))
+                    .build();
+            MessagePart attachment = MessagePart.builder()
+                    .mimeType("application/pdf")
+                    .filename("notes-" + i + ".pdf")
+                    .body(new MessagePartBody(null, "ANGjdJ" + randomText(random, 60).replace(" ", "")))
+                    .build();
+            MessagePart payload = MessagePart.builder()
+                    .mimeType("multipart/mixed")
+                    .headers(headers)
+                    .body(new MessagePartBody(null, null))
+                    .parts(List.of(alternative, attachment))
+                    .build();
+            messages.add(Message.builder()
+                    .id(Long.toHexString(random.nextLong()))
+                    .threadId("thread-1")
+                    .labelIds(List.of("INBOX", "UNREAD", "CATEGORY_UPDATES"))
+                    .snippet(text.substring(0, 160))
+                    .historyId(String.valueOf(1000 + i))
+                    .internalDate(String.valueOf(receivedAt))
+                    .payload(payload)
+                    .build());
+            receivedAt += 3_600_000L;
+        }
+        return ThreadDetail.builder()
+                .id("thread-1")
+                .historyId(String.valueOf(1000 + messageCount))
+                .snippet(messages.get(0).getSnippet())
+                .messages(messages)
+                .build();
+    }
+
+    private static String randomText(Random random, int length) {
+        String[] words = {"meeting", "budget", "roadmap", "the", "and", "review", "đã", "xác nhận", "deadline", "customer"};
+        StringBuilder builder = new StringBuilder(length + 16);
+        while (builder.length() < length) {
+            builder.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return builder.toString();
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The parser as it was in ProxyMailService before GmailMessageParser, kept as the baseline.
+     */
+    static final class LegacyParser {
+        static ThreadDetailResponse parseThread(ThreadDetail threadDetail) {
+            ThreadDetailResponse response = ThreadDetailResponse.builder()
+                    .id(threadDetail.getId())
+                    .snippet(threadDetail.getSnippet())
+                    .historyId(threadDetail.getHistoryId())
+                    .labelIds(threadDetail.getLabelIds())
+                    .messages(new ArrayList<>())
+                    .build();
+            if (threadDetail.getMessages() != null) {
+                Set<String> allLabelIds = new HashSet<>();
+                for (Message message : threadDetail.getMessages()) {
+                    MessageDetailResponse parsed = parseMessage(message);
+                    response.getMessages().add(parsed);
+                    if (parsed.getLabelIds() != null) {
+                        allLabelIds.addAll(parsed.getLabelIds());
+                    }
+                }
+                response.setLabelIds(new ArrayList<>(allLabelIds));
+            }
+            return response;
+        }
+
+        static MessageDetailResponse parseMessage(Message message) {
+            MessageDetailResponse response = MessageDetailResponse.builder()
+                    .id(message.getId())
+                    .threadId(message.getThreadId())
+                    .snippet(message.getSnippet())
+                    .labelIds(message.getLabelIds())
+                    .attachments(new ArrayList<>())
+                    .build();
+            if (message.getPayload() != null) {
+                List<MessagePartHeader> headers = message.getPayload().getHeaders();
+                response.setMessageId(getHeader(headers, "Message-ID"));
+                response.setFrom(getHeader(headers, "From"));
+                response.setTo(getHeader(headers, "To"));
+                response.setCc(getHeader(headers, "Cc"));
+                response.setBcc(getHeader(headers, "Bcc"));
+                response.setSubject(getHeader(headers, "Subject"));
+                String dateStr = getHeader(headers, "Date");
+                if (dateStr != null && !dateStr.isEmpty()) {
+                    try {
+                        Instant instant = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(dateStr));
+                        response.setDate(instant.atOffset(ZoneOffset.UTC).toString());
+                    } catch (Exception e) {
+                        response.setDate(dateStr);
+                    }
+                }
+                traverseParts(message.getPayload(), response);
+            }
+            return response;
+        }
+
+        static void traverseParts(MessagePart part, MessageDetailResponse response) {
+            if (part == null) {
+                return;
+            }
+            if (part.getBody() != null && part.getBody().getData() != null) {
+                String decoded = new String(Base64.getUrlDecoder().decode(part.getBody().getData()), StandardCharsets.UTF_8);
+                switch (part.getMimeType().toLowerCase()) {
+                    case "text/plain" -> {
+                        if (response.getTextBody() == null) {
+                            response.setTextBody(decoded);
+                        }
+                    }
+                    case "text/html" -> {
+                        if (response.getHtmlBody() == null) {
+                            response.setHtmlBody(decoded);
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            if (part.getFilename() != null && !part.getFilename().isBlank()) {
+                response.getAttachments().add(new Attachment(part.getFilename(), part.getMimeType(),
+                        part.getBody() != null ? part.getBody().getAttachmentId() : null));
+            }
+            if (part.getParts() != null) {
+                for (MessagePart child : part.getParts()) {
+                    traverseParts(child, response);
+                }
+            }
+        }
+
+        static String getHeader(List<MessagePartHeader> headers, String name) {
+            if (headers == null) {
+                return null;
+            }
+            for (MessagePartHeader header : headers) {
+                if (name.equalsIgnoreCase(header.getName())) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.aimailbox.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GmailQuotaFilterTests {
+
+	private final GmailQuotaFilter filter = new GmailQuotaFilter(250, 0.3, 0, 500);
+
+	@Test
+	void interactiveCallDoesNotWaitAfterFullBackgroundBatch() {
+		GmailQuotaFilter.Bucket bucket = filter.newBucket();
+
+		// 50 threads.get in one batch
+		assertThat(bucket.tryAcquire(500, 0.3)).isZero();
+
+		assertThat(bucket.tryAcquire(10, 0)).isZero();
+	}
+
+	@Test
+	void backgroundWaitsUntilItsDebtIsRepaid() {
+		GmailQuotaFilter.Bucket bucket = filter.newBucket();
+
+		assertThat(bucket.tryAcquire(500, 0.3)).isZero();
+
+		// 325 units of debt plus a full background share at 250 units/s
+		assertThat(bucket.tryAcquire(5, 0.3)).isGreaterThan(1_000_000_000L);
+	}
+
+	@Test
+	void backgroundNeverSpendsTheInteractiveReserve() {
+		GmailQuotaFilter.Bucket bucket = filter.newBucket();
+
+		assertThat(bucket.tryAcquire(100, 0.3)).isZero();
+		assertThat(bucket.tryAcquire(75, 0.3)).isZero();
+
+		// Only the 75 reserved units are left
+		assertThat(bucket.tryAcquire(5, 0.3)).isPositive();
+		assertThat(bucket.tryAcquire(75, 0)).isZero();
+	}
+
+	@Test
+	void interactiveCallsMayUseTheWholeBucket() {
+		GmailQuotaFilter.Bucket bucket = filter.newBucket();
+
+		assertThat(bucket.tryAcquire(250, 0)).isZero();
+		assertThat(bucket.tryAcquire(10, 0)).isPositive();
+	}
+
+	@Test
+	void chargesGmailPerMethodUnits() {
+		assertThat(GmailQuotaFilter.unitsFor(HttpMethod.POST, "/gmail/v1/users/me/messages/send")).isEqualTo(100);
+		assertThat(GmailQuotaFilter.unitsFor(HttpMethod.GET, "/gmail/v1/users/me/threads/abc")).isEqualTo(10);
+		assertThat(GmailQuotaFilter.unitsFor(HttpMethod.DELETE, "/gmail/v1/users/me/threads/abc")).isEqualTo(20);
+		assertThat(GmailQuotaFilter.unitsFor(HttpMethod.GET, "/gmail/v1/users/me/messages/m/attachments/a")).isEqualTo(5);
+		assertThat(GmailQuotaFilter.unitsFor(HttpMethod.GET, "/gmail/v1/users/me/history")).isEqualTo(2);
+	}
+}
@@ -0,0 +1,83 @@
+package com.example.aimailbox.helper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AttachmentDataDecoderTests {
+
+	@Test
+	void decodesTheDataFieldInOneChunk() {
+		byte[] payload = payload(1000);
+		byte[] json = response(Base64.getUrlEncoder().encodeToString(payload));
+
+		AttachmentDataDecoder decoder = new AttachmentDataDecoder();
+
+		assertThat(decoder.decode(json, 0, json.length)).isEqualTo(payload);
+		assertThat(decoder.isComplete()).isTrue();
+	}
+
+	@Test
+	void decodesTheSameAtEveryChunkBoundary() {
+		// 1, 2 and 3 trailing bytes cover both padded and unpadded final quanta
+		for (int size = 1; size <= 3; size++) {
+			byte[] payload = payload(30 + size);
+			for (String encoded : new String[]{
+					Base64.getUrlEncoder().encodeToString(payload),
+					Base64.getUrlEncoder().withoutPadding().encodeToString(payload)}) {
+				byte[] json = response(encoded);
+				for (int split = 1; split < json.length; split++) {
+					AttachmentDataDecoder decoder = new AttachmentDataDecoder();
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					out.writeBytes(decoder.decode(json, 0, split));
+					out.writeBytes(decoder.decode(json, split, json.length - split));
+
+					assertThat(out.toByteArray()).as("size %d, split at %d", size, split).isEqualTo(payload);
+				}
+			}
+		}
+	}
+
+	@Test
+	void ignoresOtherFieldsAndJsonEscapes() {
+		byte[] payload = payload(48);
+		String encoded = Base64.getEncoder().encodeToString(payload);
+		// Standard alphabet with an escaped slash and a wrapped line
+		String escaped = encoded.substring(0, 20).replace("/", "\\/") + "\\n" + encoded.substring(20).replace("/", "\\/");
+		byte[] json = ("{\"metadata\":\"data\",\"size\":48,\"data\":\"" + escaped + "\",\"attachmentId\":\"data\"}")
+				.getBytes(StandardCharsets.US_ASCII);
+
+		assertThat(new AttachmentDataDecoder().decode(json, 0, json.length)).isEqualTo(payload);
+	}
+
+	@Test
+	void isNotCompleteBeforeTheClosingQuote() {
+		String encoded = Base64.getUrlEncoder().encodeToString(payload(9));
+		byte[] json = response(encoded);
+		int closingQuote = new String(json, StandardCharsets.US_ASCII).indexOf(encoded) + encoded.length();
+		AttachmentDataDecoder decoder = new AttachmentDataDecoder();
+
+		decoder.decode(json, 0, closingQuote);
+		assertThat(decoder.isComplete()).isFalse();
+
+		decoder.decode(json, closingQuote, json.length - closingQuote);
+		assertThat(decoder.isComplete()).isTrue();
+	}
+
+	static byte[] payload(int size) {
+		byte[] payload = new byte[size];
+		for (int i = 0; i < size; i++) {
+			payload[i] = (byte) (i * 31 + 7);
+		}
+		return payload;
+	}
+
+	static byte[] response(String encoded) {
+		return ("{\n  \"size\": 123,\n  \"data\": \"" + encoded + "\",\n  \"attachmentId\": \"ANGjdJ8\"\n}")
+				.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.aimailbox.helper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalJsonReaderTests {
+
+	private static final String JSON = """
+			{"id":"t1","historyId":"7","nested":{"messages":[{"id":"decoy"}]},
+			 "messages":[{"id":"m1","labelIds":["INBOX"],"payload":{"parts":[{"id":"p"}]}},
+			             {"id":"m2","snippet":"a \\"quoted\\" } brace"}],
+			 "trailing":[{"id":"x"}]}
+			""";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void emitsOnlyTheElementsOfTheNamedTopLevelArray() {
+		List<Item> items = read(JSON.getBytes(StandardCharsets.UTF_8).length);
+
+		assertThat(items).extracting(Item::id).containsExactly("m1", "m2");
+		assertThat(items.get(1).snippet()).isEqualTo("a \"quoted\" } brace");
+	}
+
+	@Test
+	void elementsSplitAtEveryByteBoundaryParseTheSame() {
+		byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+		for (int split = 1; split < bytes.length; split++) {
+			List<Item> items = IncrementalJsonReader.readArrayElements(
+					Flux.just(buffer(Arrays.copyOfRange(bytes, 0, split)), buffer(Arrays.copyOfRange(bytes, split, bytes.length))),
+					objectMapper, "messages", Item.class).collectList().block();
+
+			assertThat(items).as("split at %d", split).extracting(Item::id).containsExactly("m1", "m2");
+		}
+	}
+
+	@Test
+	void singleByteChunksParseTheSame() {
+		assertThat(read(1)).extracting(Item::id).containsExactly("m1", "m2");
+	}
+
+	@Test
+	void missingFieldEmitsNothing() {
+		List<Item> items = IncrementalJsonReader.readArrayElements(
+				Flux.just(buffer("{\"id\":\"t1\"}".getBytes(StandardCharsets.UTF_8))),
+				objectMapper, "messages", Item.class).collectList().block();
+
+		assertThat(items).isEmpty();
+	}
+
+	private List<Item> read(int chunkSize) {
+		byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+		List<DataBuffer> chunks = new ArrayList<>();
+		for (int i = 0; i < bytes.length; i += chunkSize) {
+			chunks.add(buffer(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + chunkSize))));
+		}
+		return IncrementalJsonReader.readArrayElements(Flux.fromIterable(chunks), objectMapper, "messages", Item.class)
+				.collectList()
+				.block();
+	}
+
+	private static DataBuffer buffer(byte[] bytes) {
+		return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+	}
+
+	@com.fasterxml.jackson.annotation.JsonIgnoreProperties(ignoreUnknown = true)
+	record Item(String id, String snippet) {
+	}
+}
@@ -0,0 +1,120 @@
+package com.example.aimailbox.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AttachmentDiskCacheTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void servesACompletedDownloadFromDisk() throws IOException {
+		AttachmentDiskCache cache = cache(1000);
+
+		store(cache, "a1", 100);
+
+		Optional<AttachmentDiskCache.CachedBlob> blob = cache.lookup(1L, "m", "a1");
+		assertThat(blob).isPresent();
+		assertThat(Files.size(blob.get().path())).isEqualTo(100);
+		blob.get().close();
+		assertThat(cache.lookup(2L, "m", "a1")).isEmpty();
+	}
+
+	@Test
+	void discardsAPartialDownload() {
+		AttachmentDiskCache cache = cache(1000);
+
+		cache.tee(1L, "m", "a1", Flux.concat(Flux.just(buffer(100, 1)), Flux.error(new IllegalStateException())))
+				.doOnNext(DataBufferUtils::release)
+				.onErrorResume(e -> Flux.empty())
+				.blockLast();
+
+		assertThat(cache.lookup(1L, "m", "a1")).isEmpty();
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedBlobAndItsRefs() throws IOException {
+		AttachmentDiskCache cache = cache(250);
+		store(cache, "a1", 100);
+		store(cache, "a2", 100);
+
+		store(cache, "a3", 100);
+
+		assertThat(cache.lookup(1L, "m", "a1")).isEmpty();
+		assertThat(cache.lookup(1L, "m", "a3")).isPresent();
+		assertThat(count(dir.resolve("refs"))).isEqualTo(2);
+		assertThat(count(dir.resolve("blobs"))).isEqualTo(2);
+	}
+
+	@Test
+	void neverEvictsABlobWhileItIsBeingServed() throws IOException {
+		AttachmentDiskCache cache = cache(250);
+		store(cache, "a1", 100);
+		AttachmentDiskCache.CachedBlob served = cache.lookup(1L, "m", "a1").orElseThrow();
+		store(cache, "a2", 100);
+
+		store(cache, "a3", 100);
+
+		assertThat(served.path()).exists();
+		assertThat(cache.lookup(1L, "m", "a2")).isEmpty();
+		assertThat(cache.stats()).containsEntry("pinnedBlobs", 1);
+
+		served.close();
+
+		assertThat(cache.stats()).containsEntry("pinnedBlobs", 0);
+		assertThat(cache.lookup(1L, "m", "a1")).isPresent();
+	}
+
+	@Test
+	void rebuildsTheRefIndexOnStartup() throws IOException {
+		AttachmentDiskCache first = cache(1000);
+		store(first, "a1", 100);
+		store(first, "a2", 100);
+		Files.setLastModifiedTime(first.lookup(1L, "m", "a1").orElseThrow().path(), FileTime.fromMillis(0));
+
+		AttachmentDiskCache restarted = cache(150);
+
+		assertThat(restarted.lookup(1L, "m", "a2")).isPresent();
+		assertThat(count(dir.resolve("refs"))).isEqualTo(1);
+	}
+
+	private AttachmentDiskCache cache(long maxBytes) {
+		AttachmentDiskCache cache = new AttachmentDiskCache(dir.toString(), maxBytes);
+		cache.loadIndex();
+		return cache;
+	}
+
+	private static void store(AttachmentDiskCache cache, String attachmentId, int size) {
+		cache.tee(1L, "m", attachmentId, Flux.just(buffer(size, attachmentId.hashCode())))
+				.doOnNext(DataBufferUtils::release)
+				.blockLast();
+	}
+
+	private static DataBuffer buffer(int size, int seed) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (i + seed);
+		}
+		return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+	}
+
+	private static long count(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.count();
+		}
+	}
+}
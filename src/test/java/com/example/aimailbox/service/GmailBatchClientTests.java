@@ -0,0 +1,135 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.config.GmailQuotaFilter;
+import com.example.aimailbox.dto.response.GmailBatchItem;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class GmailBatchClientTests {
+
+	private static final String BOUNDARY = "batch_abc";
+	private static final String RESPONSE = String.join("\r\n",
+			"--" + BOUNDARY,
+			"Content-Type: application/http",
+			"Content-ID: <response-item-1>",
+			"",
+			"HTTP/1.1 200 OK",
+			"Content-Type: application/json; charset=UTF-8",
+			"",
+			"{\"id\":\"t2\",\"historyId\":\"9\"}",
+			"--" + BOUNDARY,
+			"Content-Type: application/http",
+			"Content-ID: <response-item-0>",
+			"",
+			"HTTP/1.1 404 Not Found",
+			"Content-Type: application/json; charset=UTF-8",
+			"",
+			"{\"error\":{\"code\":404,\"message\":\"Requested entity was not found.\"}}",
+			"--" + BOUNDARY,
+			"Content-Type: application/http",
+			"Content-ID: <response-item-2>",
+			"",
+			"HTTP/1.1 200 OK",
+			"",
+			"{\"id\":\"t3\",\"historyId\":\"11\"}",
+			"--" + BOUNDARY + "--",
+			"");
+
+	private final AtomicReference<ClientRequest> sent = new AtomicReference<>();
+
+	@Test
+	void mapsEveryPartBackToItsIdByContentId() {
+		List<GmailBatchItem<Thread>> items = client(RESPONSE.length()).get(List.of("t1", "t2", "t3"), "/threads/{id}", Thread.class)
+				.collectList()
+				.block();
+
+		assertThat(items).hasSize(3);
+		assertThat(items.get(0).getId()).isEqualTo("t2");
+		assertThat(items.get(0).getBody().historyId()).isEqualTo("9");
+		assertThat(items.get(1).getId()).isEqualTo("t1");
+		assertThat(items.get(1).getStatus()).isEqualTo(404);
+		assertThat(items.get(1).isSuccess()).isFalse();
+		assertThat(items.get(1).getError()).isEqualTo("Requested entity was not found.");
+		assertThat(items.get(2).getBody().id()).isEqualTo("t3");
+	}
+
+	@Test
+	void partsSplitAcrossSmallChunksParseTheSame() {
+		for (int chunkSize : new int[]{1, 7, 64}) {
+			List<GmailBatchItem<Thread>> items = client(chunkSize).get(List.of("t1", "t2", "t3"), "/threads/{id}", Thread.class)
+					.collectList()
+					.block();
+
+			assertThat(items).as("chunks of %d", chunkSize)
+					.extracting(GmailBatchItem::getId, GmailBatchItem::getStatus)
+					.containsExactly(
+							tuple("t2", 200),
+							tuple("t1", 404),
+							tuple("t3", 200));
+		}
+	}
+
+	@Test
+	void failedBatchReportsEveryItemAsFailed() {
+		WebClient webClient = WebClient.builder()
+				.exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build()))
+				.build();
+
+		List<GmailBatchItem<Thread>> items = new GmailBatchClient(webClient, new ObjectMapper())
+				.get(List.of("t1", "t2"), "/threads/{id}", Thread.class)
+				.collectList()
+				.block();
+
+		assertThat(items).extracting(GmailBatchItem::getId).containsExactly("t1", "t2");
+		assertThat(items).noneMatch(GmailBatchItem::isSuccess);
+	}
+
+	@Test
+	void chargesQuotaForEveryInnerRequest() {
+		client(RESPONSE.length()).get(List.of("t1", "t2", "t3"), "/threads/{id}", Thread.class).blockLast();
+
+		assertThat(sent.get().attribute(GmailQuotaFilter.QUOTA_UNITS_ATTRIBUTE)).hasValue(30);
+	}
+
+	private GmailBatchClient client(int chunkSize) {
+		byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		WebClient webClient = WebClient.builder()
+				.exchangeFunction(request -> {
+					sent.set(request);
+					List<DataBuffer> chunks = new ArrayList<>();
+					for (int i = 0; i < bytes.length; i += chunkSize) {
+						chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(
+								Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + chunkSize))));
+					}
+					return Mono.just(ClientResponse.create(HttpStatus.OK)
+							.header(HttpHeaders.CONTENT_TYPE, "multipart/mixed; boundary=" + BOUNDARY)
+							.body(Flux.fromIterable(chunks))
+							.build());
+				})
+				.build();
+		return new GmailBatchClient(webClient, new ObjectMapper());
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	record Thread(String id, String historyId) {
+	}
+}
@@ -0,0 +1,127 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.dto.response.GmailSendResponse;
+import com.example.aimailbox.helper.UserHelper;
+import com.example.aimailbox.model.OutboxMessage;
+import com.example.aimailbox.model.OutboxStatus;
+import com.example.aimailbox.model.User;
+import com.example.aimailbox.repository.OutboxMessageRepository;
+import com.example.aimailbox.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxServiceTests {
+
+	private final OutboxMessageRepository repository = mock(OutboxMessageRepository.class);
+	private final UserRepository userRepository = mock(UserRepository.class);
+	private final ProxyMailService proxyMailService = mock(ProxyMailService.class);
+	private final OutboxService outbox = new OutboxService(repository, userRepository, proxyMailService,
+			mock(UserHelper.class), 4, 3, 5, 900);
+
+	@BeforeEach
+	void noStaleClaims() {
+		when(repository.findByStatusAndClaimedAtBefore(eq(OutboxStatus.SENDING), any())).thenReturn(List.of());
+	}
+
+	@Test
+	void staleClaimIsRetriedUnderItsOwnToken() {
+		when(repository.findByStatusAndClaimedAtBefore(eq(OutboxStatus.SENDING), any()))
+				.thenReturn(List.of(claimed(1L, "stale", 0, "<a@example.com>")));
+
+		outbox.dispatch();
+
+		verify(repository).markRetry(eq(1L), eq("stale"), contains("claim expired"), any(Instant.class));
+		verify(repository, never()).markFailed(any(), any(), any());
+	}
+
+	@Test
+	void staleClaimOnItsLastAttemptFails() {
+		when(repository.findByStatusAndClaimedAtBefore(eq(OutboxStatus.SENDING), any()))
+				.thenReturn(List.of(claimed(1L, "stale", 2, "<a@example.com>")));
+
+		outbox.dispatch();
+
+		verify(repository).markFailed(eq(1L), eq("stale"), contains("claim expired"));
+		verify(repository, never()).markRetry(any(), any(), any(), any());
+	}
+
+	@Test
+	void staleClaimWithoutMessageIdIsNeverRetried() {
+		when(repository.findByStatusAndClaimedAtBefore(eq(OutboxStatus.SENDING), any()))
+				.thenReturn(List.of(claimed(1L, "stale", 0, null)));
+
+		outbox.dispatch();
+
+		verify(repository).markFailed(eq(1L), eq("stale"), startsWith("Send outcome unknown, not retried"));
+		verify(repository, never()).markRetry(any(), any(), any(), any());
+	}
+
+	@Test
+	void claimedMessageIsMarkedSentUnderItsClaimToken() {
+		User user = User.builder().id(7L).build();
+		when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+		when(repository.claimDue(anyString(), any(), eq(4))).thenReturn(1, 0);
+		when(repository.findByClaimToken(anyString())).thenAnswer(invocation ->
+				List.of(claimed(1L, invocation.getArgument(0), 0, "<a@example.com>")));
+		when(proxyMailService.sendRawMessage(any(), any()))
+				.thenReturn(Mono.just(GmailSendResponse.builder().id("m1").threadId("t1").build()));
+
+		outbox.dispatch();
+
+		ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+		verify(repository, atLeastOnce()).claimDue(token.capture(), any(), eq(4));
+		verify(repository, timeout(2000)).markSent(eq(1L), eq(token.getAllValues().get(0)), eq("m1"), eq("t1"),
+				any(Instant.class));
+		verify(repository, never()).markRetry(any(), any(), any(), any());
+		verify(proxyMailService, never()).findByRfc822MessageId(any());
+	}
+
+	@Test
+	void retriedMessageThatWasAlreadySentIsNotSentAgain() {
+		User user = User.builder().id(7L).build();
+		when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+		when(repository.claimDue(anyString(), any(), anyInt())).thenReturn(1, 0);
+		when(repository.findByClaimToken(anyString())).thenAnswer(invocation ->
+				List.of(claimed(1L, invocation.getArgument(0), 1, "<a@example.com>")));
+		when(proxyMailService.findByRfc822MessageId("<a@example.com>"))
+				.thenReturn(Mono.just(GmailSendResponse.builder().id("m1").threadId("t1").build()));
+		when(proxyMailService.sendRawMessage(any(), any())).thenReturn(Mono.error(new AssertionError("sent twice")));
+
+		outbox.dispatch();
+
+		verify(repository, timeout(2000)).markSent(eq(1L), anyString(), eq("m1"), eq("t1"), any(Instant.class));
+		verify(repository, never()).markRetry(any(), any(), any(), any());
+	}
+
+	@Test
+	void nothingIsSentWhenNoMessageWasClaimed() {
+		when(repository.claimDue(anyString(), any(), anyInt())).thenReturn(0);
+
+		outbox.dispatch();
+
+		verify(repository, never()).findByClaimToken(any());
+		verifyNoInteractions(proxyMailService);
+	}
+
+	private static OutboxMessage claimed(Long id, String token, int attempts, String messageId) {
+		return OutboxMessage.builder()
+				.id(id)
+				.userId(7L)
+				.raw(new byte[0])
+				.rfc822MessageId(messageId)
+				.status(OutboxStatus.SENDING)
+				.attempts(attempts)
+				.claimToken(token)
+				.claimedAt(Instant.now())
+				.build();
+	}
+}
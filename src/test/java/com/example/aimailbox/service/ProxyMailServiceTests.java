@@ -0,0 +1,92 @@
+package com.example.aimailbox.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProxyMailServiceTests {
+
+	private static final byte[] PAYLOAD = new byte[3000];
+
+	static {
+		for (int i = 0; i < PAYLOAD.length; i++) {
+			PAYLOAD[i] = (byte) (i * 13 + 5);
+		}
+	}
+
+	private final AtomicInteger chunksServed = new AtomicInteger();
+
+	@Test
+	void streamsTheWholeAttachment() {
+		assertThat(read(service(37).streamAttachment("m", "a"))).isEqualTo(PAYLOAD);
+	}
+
+	@Test
+	void streamsRangesThatCrossChunkBoundaries() {
+		long[][] ranges = {{0, 0}, {0, 99}, {1, 2}, {500, 1499}, {2998, 2999}, {2999, 2999}};
+		for (long[] range : ranges) {
+			byte[] bytes = read(service(37).streamAttachment("m", "a", range[0], range[1]));
+
+			assertThat(bytes).as("bytes %d-%d", range[0], range[1])
+					.isEqualTo(Arrays.copyOfRange(PAYLOAD, (int) range[0], (int) range[1] + 1));
+		}
+	}
+
+	@Test
+	void stopsDownloadingOnceTheRangeIsComplete() {
+		read(service(100).streamAttachment("m", "a", 0, 99));
+
+		assertThat(chunksServed.get()).isLessThan(10);
+	}
+
+	private ProxyMailService service(int chunkSize) {
+		byte[] json = ("{\"size\":3000,\"data\":\"" + Base64.getUrlEncoder().encodeToString(PAYLOAD) + "\",\"attachmentId\":\"a\"}")
+				.getBytes(StandardCharsets.US_ASCII);
+		List<byte[]> chunks = new ArrayList<>();
+		for (int i = 0; i < json.length; i += chunkSize) {
+			chunks.add(Arrays.copyOfRange(json, i, Math.min(json.length, i + chunkSize)));
+		}
+		Flux<DataBuffer> body = Flux.fromIterable(chunks)
+				.doOnNext(chunk -> chunksServed.incrementAndGet())
+				.map(DefaultDataBufferFactory.sharedInstance::wrap);
+		WebClient webClient = WebClient.builder()
+				.exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+						.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+						.body(body)
+						.build()))
+				.build();
+		return new ProxyMailService(webClient, null, null, null, null, null, null, null, null, null, null,
+				new ObjectMapper());
+	}
+
+	private static byte[] read(Flux<DataBuffer> data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		data.doOnNext(buffer -> {
+					byte[] bytes = new byte[buffer.readableByteCount()];
+					buffer.read(bytes);
+					out.writeBytes(bytes);
+					DataBufferUtils.release(buffer);
+				})
+				.blockLast();
+		return out.toByteArray();
+	}
+}
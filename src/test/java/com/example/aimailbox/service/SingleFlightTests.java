@@ -0,0 +1,71 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.config.GmailPriority;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTests {
+
+	private final SingleFlight singleFlight = new SingleFlight();
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+	private final Sinks.One<String> upstream = Sinks.one();
+
+	@Test
+	void concurrentCallersInTheSameLaneShareOneCall() {
+		AtomicReference<String> first = new AtomicReference<>();
+		AtomicReference<String> second = new AtomicReference<>();
+		singleFlight.execute("k", this::call).subscribe(first::set);
+		singleFlight.execute("k", this::call).subscribe(second::set);
+
+		upstream.tryEmitValue("v");
+
+		assertThat(first).hasValue("v");
+		assertThat(second).hasValue("v");
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(singleFlight.stats()).containsEntry("coalesced", 1L);
+	}
+
+	@Test
+	void interactiveCallerNeverJoinsABackgroundCall() {
+		singleFlight.execute("k", this::call).contextWrite(ctx -> ctx.put(GmailPriority.class, GmailPriority.BACKGROUND))
+				.subscribe();
+
+		String interactive = singleFlight.execute("k", () -> Mono.just("fresh")).block();
+
+		assertThat(interactive).isEqualTo("fresh");
+		assertThat(upstreamCalls).hasValue(1);
+	}
+
+	@Test
+	void backgroundCallerJoinsAnInteractiveCall() {
+		singleFlight.execute("k", this::call).subscribe();
+
+		AtomicReference<String> background = new AtomicReference<>();
+		singleFlight.execute("k", () -> Mono.just("separate"))
+				.contextWrite(ctx -> ctx.put(GmailPriority.class, GmailPriority.BACKGROUND))
+				.subscribe(background::set);
+		upstream.tryEmitValue("shared");
+
+		assertThat(background).hasValue("shared");
+		assertThat(upstreamCalls).hasValue(1);
+	}
+
+	@Test
+	void nothingIsKeptOnceTheCallCompletes() {
+		singleFlight.execute("k", () -> Mono.just("a")).block();
+
+		assertThat(singleFlight.execute("k", () -> Mono.just("b")).block()).isEqualTo("b");
+		assertThat(singleFlight.stats()).containsEntry("inFlight", 0);
+	}
+
+	private Mono<String> call() {
+		upstreamCalls.incrementAndGet();
+		return upstream.asMono();
+	}
+}
@@ -0,0 +1,182 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.helper.UserHelper;
+import com.example.aimailbox.model.SyncJob;
+import com.example.aimailbox.model.SyncJobMode;
+import com.example.aimailbox.model.SyncJobStatus;
+import com.example.aimailbox.model.SyncJobWindow;
+import com.example.aimailbox.model.User;
+import com.example.aimailbox.repository.SyncJobRepository;
+import com.example.aimailbox.repository.SyncJobWindowRepository;
+import com.example.aimailbox.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SyncJobServiceTests {
+
+	private final SyncJobRepository jobs = mock(SyncJobRepository.class);
+	private final SyncJobWindowRepository windows = mock(SyncJobWindowRepository.class);
+	private final UserRepository users = mock(UserRepository.class);
+	private final SematicSearchService sematicSearchService = mock(SematicSearchService.class);
+	private final SyncPipeline pipeline = mock(SyncPipeline.class);
+	private final SyncJobService service = new SyncJobService(jobs, windows, users, sematicSearchService, pipeline,
+			mock(ProxyMailService.class), mock(UserHelper.class), mock(PlatformTransactionManager.class),
+			mock(ApplicationEventPublisher.class), 120, 30, 10, 3, 20000, 60);
+
+	private final User user = User.builder().id(7L).email("a@example.com").build();
+
+	@BeforeEach
+	void setUp() {
+		when(users.lockById(7L)).thenReturn(Optional.of(user));
+		when(users.findById(7L)).thenReturn(Optional.of(user));
+		when(sematicSearchService.saveHistoryCheckpoint(any(), any())).thenReturn(Mono.empty());
+	}
+
+	@Test
+	void jobClaimedElsewhereIsNotRunHere() {
+		active(SyncJob.builder().id(1L).userId(7L).mode(SyncJobMode.FULL).planned(true).build());
+		when(jobs.claim(eq(1L), anyString(), any(), any())).thenReturn(0);
+
+		assertThat(service.startInBackground(7L)).isFalse();
+		verifyNoInteractions(pipeline);
+	}
+
+	@Test
+	void listingResumesFromItsCheckpointAndRecordsEveryPage() {
+		SyncJob job = SyncJob.builder().id(1L).userId(7L).mode(SyncJobMode.FULL).planned(true)
+				.query("after:1").pageToken("p1").pagesSynced(1).historyId("h1").build();
+		active(job);
+		claimable(job);
+		when(pipeline.run(eq(user), eq("after:1"), anyInt(), eq("p1"), eq(false), any())).thenReturn(Flux.just(
+				new SyncPipeline.PageResult(10, "p2"), new SyncPipeline.PageResult(5, null)));
+		when(jobs.recordPage(eq(1L), anyString(), any(), anyInt(), any())).thenReturn(1);
+
+		assertThat(service.startInBackground(7L)).isTrue();
+
+		verify(jobs, timeout(2000)).finish(eq(1L), anyString(), eq(SyncJobStatus.SUCCEEDED), isNull(), any());
+		var order = inOrder(jobs, sematicSearchService);
+		order.verify(jobs).recordPage(eq(1L), anyString(), eq("p2"), eq(10), any());
+		order.verify(jobs).recordPage(eq(1L), anyString(), isNull(), eq(5), any());
+		order.verify(sematicSearchService).saveHistoryCheckpoint(user, "h1");
+	}
+
+	@Test
+	void jobTakenOverMidListingIsLeftToItsNewOwner() {
+		SyncJob job = SyncJob.builder().id(1L).userId(7L).mode(SyncJobMode.FULL).planned(true).historyId("h1").build();
+		active(job);
+		claimable(job);
+		when(pipeline.run(any(), any(), anyInt(), any(), anyBoolean(), any()))
+				.thenReturn(Flux.just(new SyncPipeline.PageResult(10, "p2"), new SyncPipeline.PageResult(5, null)));
+		when(jobs.recordPage(eq(1L), anyString(), any(), anyInt(), any())).thenReturn(0);
+
+		service.startInBackground(7L);
+
+		verify(jobs, timeout(2000)).recordPage(eq(1L), anyString(), eq("p2"), eq(10), any());
+		verify(jobs, after(200).never()).finish(any(), any(), any(), any(), any());
+		verify(jobs).recordPage(any(), any(), any(), anyInt(), any());
+		verifyNoInteractions(sematicSearchService);
+	}
+
+	@Test
+	void heartbeatStopsJobsOwnedByAnotherInstance() {
+		SyncJob job = SyncJob.builder().id(1L).userId(7L).mode(SyncJobMode.FULL).planned(true).build();
+		active(job);
+		claimable(job);
+		AtomicBoolean cancelled = new AtomicBoolean();
+		when(pipeline.run(any(), any(), anyInt(), any(), anyBoolean(), any()))
+				.thenReturn(Flux.<SyncPipeline.PageResult>never().doOnCancel(() -> cancelled.set(true)));
+		service.startInBackground(7L);
+		verify(pipeline, timeout(2000)).run(any(), any(), anyInt(), any(), anyBoolean(), any());
+
+		when(jobs.heartbeat(eq(List.of(1L)), anyString(), any())).thenReturn(0);
+		when(jobs.findAllById(List.of(1L))).thenReturn(List.of(SyncJob.builder().id(1L).userId(7L)
+				.status(SyncJobStatus.RUNNING).owner("other-instance").build()));
+		service.heartbeat();
+
+		await().untilTrue(cancelled);
+		verify(jobs, never()).finish(any(), any(), any(), any(), any());
+		// No longer running here, so the next start tries to claim it again
+		when(jobs.claim(eq(1L), anyString(), any(), any())).thenReturn(0);
+		assertThat(service.startInBackground(7L)).isFalse();
+		verify(jobs, times(2)).claim(eq(1L), anyString(), any(), any());
+	}
+
+	@Test
+	void heartbeatKeepsJobsItStillOwns() {
+		SyncJob job = SyncJob.builder().id(1L).userId(7L).mode(SyncJobMode.FULL).planned(true).build();
+		active(job);
+		claimable(job);
+		when(pipeline.run(any(), any(), anyInt(), any(), anyBoolean(), any())).thenReturn(Flux.never());
+		service.startInBackground(7L);
+		verify(pipeline, timeout(2000)).run(any(), any(), anyInt(), any(), anyBoolean(), any());
+
+		when(jobs.heartbeat(eq(List.of(1L)), anyString(), any())).thenReturn(1);
+		service.heartbeat();
+
+		verify(jobs, never()).findAllById(any());
+		// Still running here, so it is not claimed a second time
+		assertThat(service.startInBackground(7L)).isFalse();
+		verify(jobs, times(1)).claim(eq(1L), anyString(), any(), any());
+	}
+
+	@Test
+	void backfillResumesEachWindowFromItsOwnPageToken() {
+		SyncJob job = SyncJob.builder().id(1L).userId(7L).mode(SyncJobMode.BACKFILL).planned(true).historyId("h1").build();
+		active(job);
+		claimable(job);
+		SyncJobWindow window = SyncJobWindow.builder().id(11L).jobId(1L).afterEpoch(100).beforeEpoch(200)
+				.pageToken("w1").build();
+		when(windows.findByJobIdAndDoneFalseOrderByBeforeEpochDesc(1L)).thenReturn(List.of(window));
+		when(pipeline.run(eq(user), eq("after:100 before:200"), anyInt(), eq("w1"), eq(false), any()))
+				.thenReturn(Flux.just(new SyncPipeline.PageResult(3, "w2"), new SyncPipeline.PageResult(4, "")));
+		when(jobs.recordPage(eq(1L), anyString(), any(), anyInt(), any())).thenReturn(1);
+
+		service.startInBackground(7L);
+
+		verify(jobs, timeout(2000)).finish(eq(1L), anyString(), eq(SyncJobStatus.SUCCEEDED), isNull(), any());
+		verify(windows).recordPage(11L, "w2", 3, false);
+		verify(windows).recordPage(11L, null, 4, true);
+		verify(sematicSearchService).saveHistoryCheckpoint(user, "h1");
+	}
+
+	@Test
+	void staleJobsAreResumedOrCancelled() {
+		SyncJob stale = SyncJob.builder().id(1L).userId(7L).mode(SyncJobMode.FULL).planned(true).build();
+		SyncJob cancelRequested = SyncJob.builder().id(2L).userId(7L).cancelRequested(true).build();
+		when(jobs.findResumable(any(), any())).thenReturn(List.of(stale, cancelRequested));
+		claimable(stale);
+		when(pipeline.run(any(), any(), anyInt(), any(), anyBoolean(), any())).thenReturn(Flux.never());
+
+		service.resumeStaleJobs();
+
+		verify(jobs).claim(eq(1L), anyString(), any(), any());
+		verify(pipeline, timeout(2000)).run(any(), any(), anyInt(), any(), anyBoolean(), any());
+		verify(jobs).cancelUnclaimed(eq(2L), any(), any());
+		verify(jobs, never()).claim(eq(2L), any(), any(), any());
+	}
+
+	private void active(SyncJob job) {
+		when(jobs.findFirstByUserIdAndStatusInOrderByCreatedAtDesc(eq(7L), any())).thenReturn(Optional.of(job));
+	}
+
+	private void claimable(SyncJob job) {
+		when(jobs.claim(eq(job.getId()), anyString(), any(), any())).thenReturn(1);
+		when(jobs.findById(job.getId())).thenReturn(Optional.of(job));
+		when(jobs.isCancelRequested(job.getId())).thenReturn(false);
+		when(jobs.finish(eq(job.getId()), anyString(), any(), any(), any())).thenReturn(1);
+	}
+}
@@ -0,0 +1,90 @@
+package com.example.aimailbox.service;
+
+import com.example.aimailbox.dto.response.MessageDetailResponse;
+import com.example.aimailbox.dto.response.ThreadDetailResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThreadDetailCacheTests {
+
+	private final ThreadDetailCache cache = new ThreadDetailCache(1024 * 1024, 10);
+
+	@Test
+	void newerHistoryIdInvalidatesTheCachedThread() {
+		cache.put(1L, thread("t1", "100", "m1"));
+
+		cache.observeHistoryId(1L, "t1", "101");
+
+		assertThat(cache.get(1L, "t1")).isNull();
+	}
+
+	@Test
+	void sameOrOlderHistoryIdKeepsTheCachedThread() {
+		cache.put(1L, thread("t1", "100", "m1"));
+
+		cache.observeHistoryId(1L, "t1", "100");
+		cache.observeHistoryId(1L, "t1", "99");
+
+		assertThat(cache.get(1L, "t1")).isNotNull();
+	}
+
+	@Test
+	void olderFetchNeverReplacesANewerEntry() {
+		cache.put(1L, thread("t1", "200", "m1", "m2"));
+
+		cache.put(1L, thread("t1", "150", "m1"));
+
+		assertThat(cache.get(1L, "t1").getHistoryId()).isEqualTo("200");
+	}
+
+	@Test
+	void entriesAreKeptPerUser() {
+		cache.put(1L, thread("t1", "100", "m1"));
+
+		cache.observeHistoryId(2L, "t1", "500");
+		cache.invalidateMessage(2L, "m1");
+
+		assertThat(cache.get(1L, "t1")).isNotNull();
+		assertThat(cache.get(2L, "t1")).isNull();
+	}
+
+	@Test
+	void invalidateMessageDropsTheThreadContainingIt() {
+		cache.put(1L, thread("t1", "100", "m1", "m2"));
+		cache.put(1L, thread("t2", "100", "m3"));
+
+		cache.invalidateMessage(1L, "m2");
+
+		assertThat(cache.get(1L, "t1")).isNull();
+		assertThat(cache.get(1L, "t2")).isNotNull();
+	}
+
+	@Test
+	void copyDoesNotShareListsWithTheCachedThread() {
+		cache.put(1L, thread("t1", "100", "m1", "m2"));
+
+		ThreadDetailResponse copy = ThreadDetailCache.copy(cache.get(1L, "t1"));
+		copy.getMessages().remove(0);
+		copy.getLabelIds().add("STARRED");
+
+		assertThat(cache.get(1L, "t1").getMessages()).hasSize(2);
+		assertThat(cache.get(1L, "t1").getLabelIds()).containsExactly("INBOX");
+	}
+
+	static ThreadDetailResponse thread(String id, String historyId, String... messageIds) {
+		List<MessageDetailResponse> messages = new ArrayList<>();
+		for (String messageId : messageIds) {
+			messages.add(MessageDetailResponse.builder().id(messageId).threadId(id).build());
+		}
+		return ThreadDetailResponse.builder()
+				.id(id)
+				.historyId(historyId)
+				.labelIds(new ArrayList<>(List.of("INBOX")))
+				.messages(messages)
+				.build();
+	}
+}